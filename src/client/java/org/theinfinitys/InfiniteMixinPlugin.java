@@ -0,0 +1,76 @@
+package org.theinfinitys;
+
+import java.util.List;
+import java.util.Set;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.spongepowered.asm.mixin.extensibility.IMixinConfigPlugin;
+import org.spongepowered.asm.mixin.extensibility.IMixinInfo;
+
+/**
+ * infinite.client.mixins.json のプラグイン。
+ *
+ * <p>Indigo の内部実装に対する任意のフック（require = 0）が実際に注入されたかを記録し、XRay が失敗を検出できるようにする。
+ * このクラスは mixin のパッケージの外に置き、通常のクラスとして参照できるようにしている。
+ */
+public class InfiniteMixinPlugin implements IMixinConfigPlugin {
+  private static final String INDIGO_TERRAIN_MIXIN = "XRayIndigoTerrainMixin";
+  private static final String INDIGO_TERRAIN_HANDLER = "onGetVertexConsumer";
+
+  private static volatile boolean indigoTerrainHooked = false;
+
+  /**
+   * XRayIndigoTerrainMixin の getVertexConsumer へのフックが注入されたかを返す。対象のクラスが読み込まれるまでは false。
+   */
+  public static boolean isIndigoTerrainHooked() {
+    return indigoTerrainHooked;
+  }
+
+  @Override
+  public void onLoad(String mixinPackage) {}
+
+  @Override
+  public String getRefMapperConfig() {
+    return null;
+  }
+
+  @Override
+  public boolean shouldApplyMixin(String targetClassName, String mixinClassName) {
+    return true;
+  }
+
+  @Override
+  public void acceptTargets(Set<String> myTargets, Set<String> otherTargets) {}
+
+  @Override
+  public List<String> getMixins() {
+    return null;
+  }
+
+  @Override
+  public void preApply(
+      String targetClassName, ClassNode targetClass, String mixinClassName, IMixinInfo mixinInfo) {}
+
+  @Override
+  public void postApply(
+      String targetClassName, ClassNode targetClass, String mixinClassName, IMixinInfo mixinInfo) {
+    if (!mixinClassName.endsWith(INDIGO_TERRAIN_MIXIN)) {
+      return;
+    }
+    // require = 0 では注入先が見つからなくてもエラーにならないため、ハンドラの呼び出しが実際に入ったかを確認する
+    for (MethodNode method : targetClass.methods) {
+      if (!method.name.equals("getVertexConsumer")) {
+        continue;
+      }
+      for (AbstractInsnNode instruction : method.instructions) {
+        if (instruction instanceof MethodInsnNode call
+            && call.name.contains(INDIGO_TERRAIN_HANDLER)) {
+          indigoTerrainHooked = true;
+          return;
+        }
+      }
+    }
+  }
+}
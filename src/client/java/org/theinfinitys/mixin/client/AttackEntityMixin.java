@@ -0,0 +1,22 @@
+package org.theinfinitys.mixin.client;
+
+import net.minecraft.client.network.ClientPlayerInteractionManager;
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.player.PlayerEntity;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+import org.theinfinitys.InfiniteEventBus;
+
+@Mixin(ClientPlayerInteractionManager.class)
+public class AttackEntityMixin {
+
+  // NoAttack・PlayerManager・SuperAttack は AttackEntityEvent のリスナーとして処理する
+  @Inject(method = "attackEntity", at = @At("HEAD"), cancellable = true)
+  private void onAttackEntity(PlayerEntity player, Entity target, CallbackInfo ci) {
+    if (InfiniteEventBus.INSTANCE.fireAttackEntity(player, target)) {
+      ci.cancel(); // Cancel the attack
+    }
+  }
+}
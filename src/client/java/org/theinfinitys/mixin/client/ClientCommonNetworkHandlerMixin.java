@@ -2,30 +2,26 @@ package org.theinfinitys.mixin.client;
 
 import net.minecraft.client.network.ClientCommonNetworkHandler;
 import net.minecraft.network.packet.Packet;
-import net.minecraft.network.packet.c2s.play.PlayerMoveC2SPacket;
 import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Inject;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
-import org.theinfinitys.InfiniteClient;
-import org.theinfinitys.features.movement.Freeze;
+import org.theinfinitys.InfiniteEventBus;
 
 @Mixin(ClientCommonNetworkHandler.class)
-public class FreezeNetworkHandlerMixin {
+public class ClientCommonNetworkHandlerMixin {
 
     /**
-     * クライアントがパケットを送信する直前にフックし、Freezeが有効な場合は処理をブロックする。
+     * クライアントがパケットを送信する直前にフックし、PacketSendEventを発行する。
+     * リスナーがイベントをキャンセルした場合は送信をブロックする。
      *
      * @param packet 送信されようとしているパケット
      * @param ci     CallbackInfo
      */
     @Inject(method = "sendPacket(Lnet/minecraft/network/packet/Packet;)V", at = @At("HEAD"), cancellable = true)
     private void onSendPacket(Packet<?> packet, CallbackInfo ci) {
-        Freeze freezeFeature = InfiniteClient.INSTANCE.getFeature(Freeze.class);
-        if (!InfiniteClient.INSTANCE.isFeatureEnabled(Freeze.class) || !(packet instanceof PlayerMoveC2SPacket) || freezeFeature == null) {
-            return;
+        if (InfiniteEventBus.INSTANCE.firePacketSend(packet)) {
+            ci.cancel();
         }
-        freezeFeature.processMovePacket((PlayerMoveC2SPacket) packet);
-        ci.cancel();
     }
-}
\ No newline at end of file
+}
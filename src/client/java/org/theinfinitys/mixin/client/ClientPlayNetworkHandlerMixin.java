@@ -0,0 +1,19 @@
+package org.theinfinitys.mixin.client;
+
+import net.minecraft.client.network.ClientPlayNetworkHandler;
+import net.minecraft.network.packet.s2c.query.PingResultS2CPacket;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+import org.theinfinitys.features.fighting.AimPredictor;
+
+@Mixin(ClientPlayNetworkHandler.class)
+public class ClientPlayNetworkHandlerMixin {
+
+  // ping の応答を AimPredictor に渡す。ネットワークスレッドから呼ばれる
+  @Inject(method = "onPingResult", at = @At("HEAD"))
+  private void onPingResult(PingResultS2CPacket packet, CallbackInfo ci) {
+    AimPredictor.INSTANCE.onPingResult(packet.startTime());
+  }
+}
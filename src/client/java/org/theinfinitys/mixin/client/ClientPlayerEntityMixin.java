@@ -23,13 +23,15 @@ import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Inject;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
-import org.theinfinitys.InfiniteClient;
-import org.theinfinitys.features.fighting.Reach;
-import org.theinfinitys.features.movement.FreeCamera;
+import org.theinfinitys.FeatureFlags;
+import org.theinfinitys.FeatureHandle;
+import org.theinfinitys.FeatureRegistry;
+import org.theinfinitys.InfiniteEventBus;
+import org.theinfinitys.features.fighting.CombatPipeline;
+import org.theinfinitys.features.fighting.TargetScorer;
 import org.theinfinitys.features.movement.SafeWalk;
 import org.theinfinitys.features.movement.SuperSprint;
 import org.theinfinitys.features.rendering.PortalGui;
-import org.theinfinitys.features.rendering.SuperSight;
 
 @Mixin(ClientPlayerEntity.class)
 public abstract class ClientPlayerEntityMixin extends AbstractClientPlayerEntity {
@@ -39,10 +41,34 @@ public abstract class ClientPlayerEntityMixin extends AbstractClientPlayerEntity
 
   @Unique private Screen tempCurrentScreen;
 
+  // 毎フレーム呼ばれるオーバーライドからレジストリを走査しないよう、ハンドルを保持する
+  @Unique
+  private static final FeatureHandle<SuperSprint> SUPER_SPRINT =
+      FeatureRegistry.INSTANCE.handle(SuperSprint.class);
+
+  @Unique
+  private static final FeatureHandle<SafeWalk> SAFE_WALK =
+      FeatureRegistry.INSTANCE.handle(SafeWalk.class);
+
+  @Unique
+  private static final FeatureHandle<PortalGui> PORTAL_GUI =
+      FeatureRegistry.INSTANCE.handle(PortalGui.class);
+
+  // FreeCamera・SafeWalk・SuperSight・Reach の判定は FeatureFlags の static フィールドを読むだけで済ませる
+
   public ClientPlayerEntityMixin(ClientWorld world, GameProfile profile) {
     super(world, profile);
   }
 
+  // KillAura・CounterAttack・ImpactAttack は CombatPipeline にまとめて、ここで一度だけ処理する
+  @Inject(method = "tick", at = @At("TAIL"))
+  private void onTick(CallbackInfo ci) {
+    ClientPlayerEntity player = (ClientPlayerEntity) (Object) this;
+    TargetScorer.INSTANCE.onPlayerTick(player);
+    CombatPipeline.INSTANCE.tick(player);
+    InfiniteEventBus.INSTANCE.firePlayerTick(player);
+  }
+
   @WrapOperation(
       at =
           @At(
@@ -52,8 +78,8 @@ public abstract class ClientPlayerEntityMixin extends AbstractClientPlayerEntity
       method = "tickMovement()V")
   private boolean wrapHasForwardMovement(Input input, Operation<Boolean> original) {
     // Feature: SuperSprint (Setting: OnlyWhenForward)
-    if (InfiniteClient.INSTANCE.isFeatureEnabled(SuperSprint.class)
-        && !InfiniteClient.INSTANCE.isSettingEnabled(SuperSprint.class, "OnlyWhenForward"))
+    SuperSprint superSprint = SUPER_SPRINT.get();
+    if (superSprint != null && superSprint.isEnabled() && !superSprint.getOnlyWhenForward().get())
       return input.getMovementInput().length() > 1e-5F;
 
     return original.call(input);
@@ -61,7 +87,7 @@ public abstract class ClientPlayerEntityMixin extends AbstractClientPlayerEntity
 
   @Inject(method = "tickMovement", at = @At("HEAD"), cancellable = true)
   private void onTickMovement(CallbackInfo ci) {
-    if (InfiniteClient.INSTANCE.isFeatureEnabled(FreeCamera.class)) {
+    if (FeatureFlags.freeCamera) {
       ci.cancel();
     }
   }
@@ -84,7 +110,7 @@ public abstract class ClientPlayerEntityMixin extends AbstractClientPlayerEntity
       method = "tickNausea(Z)V")
   private void beforeTickNausea(boolean fromPortalEffect, CallbackInfo ci) {
     // Feature: PortalGui の有効性チェック
-    if (!InfiniteClient.INSTANCE.isFeatureEnabled(PortalGui.class)) return;
+    if (!PORTAL_GUI.isEnabled()) return;
 
     tempCurrentScreen = client.currentScreen;
     client.currentScreen = null;
@@ -110,19 +136,20 @@ public abstract class ClientPlayerEntityMixin extends AbstractClientPlayerEntity
   @Inject(at = @At("HEAD"), method = "canSprint()Z", cancellable = true)
   private void onCanSprint(CallbackInfoReturnable<Boolean> cir) {
     // Feature: SuperSprint (Setting: EvenIfHungry)
-    if (InfiniteClient.INSTANCE.isSettingEnabled(SuperSprint.class, "EvenIfHungry"))
+    SuperSprint superSprint = SUPER_SPRINT.get();
+    if (superSprint != null && superSprint.isEnabled() && superSprint.getEvenIfHungry().get())
       cir.setReturnValue(true);
   }
 
   /** FreeCamera: Player appears as a spectator when FreeCamera is enabled. */
   public boolean isSpectator() {
     // Feature: FreeCamera の有効性チェック
-    return super.isSpectator() || InfiniteClient.INSTANCE.isFeatureEnabled(FreeCamera.class);
+    return FeatureFlags.freeCamera || super.isSpectator();
   }
 
   /** SafeWalk: This is the part that makes SafeWalk work. */
   protected boolean clipAtLedge() {
-    return super.clipAtLedge() || InfiniteClient.INSTANCE.isFeatureEnabled(SafeWalk.class);
+    return FeatureFlags.safeWalk || super.clipAtLedge();
   }
 
   /** SafeWalk: Allows SafeWalk to sneak visibly when the player is near a ledge. */
@@ -130,11 +157,9 @@ public abstract class ClientPlayerEntityMixin extends AbstractClientPlayerEntity
   protected Vec3d adjustMovementForSneaking(Vec3d movement, MovementType type) {
 
     Vec3d vec3d = super.adjustMovementForSneaking(movement, type);
-    SafeWalk safeWalk = InfiniteClient.INSTANCE.getFeature(SafeWalk.class);
-    if (movement != null
-        && InfiniteClient.INSTANCE.isFeatureEnabled(SafeWalk.class)
-        && safeWalk != null) {
-      safeWalk.onPreMotion();
+    if (FeatureFlags.safeWalk && movement != null) {
+      SafeWalk safeWalk = SAFE_WALK.get();
+      if (safeWalk != null) safeWalk.onPreMotion();
     }
     return vec3d;
   }
@@ -143,15 +168,11 @@ public abstract class ClientPlayerEntityMixin extends AbstractClientPlayerEntity
     // Feature: SuperSight
 
     // NightVision
-    if (InfiniteClient.INSTANCE.isFeatureEnabled(SuperSight.class)
-        && effect == StatusEffects.NIGHT_VISION
-        && InfiniteClient.INSTANCE.isSettingEnabled(SuperSight.class, "FullBright")) return true;
+    if (FeatureFlags.fullBright && effect == StatusEffects.NIGHT_VISION) return true;
 
     // AntiBlind (BLINDNESS, DARKNESS)
-    if (InfiniteClient.INSTANCE.isFeatureEnabled(SuperSight.class)
-        && InfiniteClient.INSTANCE.isSettingEnabled(SuperSight.class, "AntiBlind")) {
-      if (effect == StatusEffects.BLINDNESS || effect == StatusEffects.DARKNESS) return false;
-    }
+    if (FeatureFlags.antiBlind
+        && (effect == StatusEffects.BLINDNESS || effect == StatusEffects.DARKNESS)) return false;
 
     // 💡 修正点: 無限再帰を防ぐため、superを使って元のメソッドを呼び出す
     return super.hasStatusEffect(effect);
@@ -163,8 +184,7 @@ public abstract class ClientPlayerEntityMixin extends AbstractClientPlayerEntity
 
   public double getBlockInteractionRange() {
     // Feature: Reach
-    if (InfiniteClient.INSTANCE.isFeatureEnabled(Reach.class))
-      return InfiniteClient.INSTANCE.getSettingFloat(Reach.class, "ReachDistance", 4.5F);
+    if (FeatureFlags.reach) return FeatureFlags.reachDistance;
 
     // super.getBlockInteractionRange()
     return 4.5;
@@ -172,8 +192,7 @@ public abstract class ClientPlayerEntityMixin extends AbstractClientPlayerEntity
 
   public double getEntityInteractionRange() {
     // Feature: Reach
-    if (InfiniteClient.INSTANCE.isFeatureEnabled(Reach.class))
-      return InfiniteClient.INSTANCE.getSettingFloat(Reach.class, "ReachDistance", 3.0F);
+    if (FeatureFlags.reach) return FeatureFlags.reachDistance;
 
     // super.getEntityInteractionRange()
     return 3.0;
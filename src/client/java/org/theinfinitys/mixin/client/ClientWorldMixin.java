@@ -0,0 +1,22 @@
+package org.theinfinitys.mixin.client;
+
+import net.minecraft.block.BlockState;
+import net.minecraft.client.world.ClientWorld;
+import net.minecraft.util.math.BlockPos;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+import org.theinfinitys.features.rendering.XRayCaveGraph;
+import org.theinfinitys.features.rendering.XRayOreIndex;
+
+@Mixin(ClientWorld.class)
+public class ClientWorldMixin {
+
+  // ブロック更新パケット（単体・セクション単位の両方）の適用後に XRay のインデックスと洞窟のグラフへ差分を反映する
+  @Inject(method = "handleBlockUpdate", at = @At("TAIL"))
+  private void onHandleBlockUpdate(BlockPos pos, BlockState state, int flags, CallbackInfo ci) {
+    XRayOreIndex.INSTANCE.onBlockUpdate((ClientWorld) (Object) this, pos, state);
+    XRayCaveGraph.INSTANCE.onBlockUpdate((ClientWorld) (Object) this, pos, state);
+  }
+}
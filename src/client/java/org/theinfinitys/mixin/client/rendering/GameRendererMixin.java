@@ -12,11 +12,10 @@ import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Inject;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+import org.theinfinitys.FeatureFlags;
 import org.theinfinitys.InfiniteClient;
 import org.theinfinitys.features.movement.FreeCamera;
 import org.theinfinitys.features.rendering.CameraConfig;
-import org.theinfinitys.features.rendering.SuperSight;
-import org.theinfinitys.features.rendering.XRay;
 
 @Mixin(GameRenderer.class)
 public abstract class GameRendererMixin {
@@ -29,8 +28,7 @@ public abstract class GameRendererMixin {
             cancellable = true)
     private static void onGetNightVisionStrength(
             LivingEntity entity, float tickDelta, CallbackInfoReturnable<Float> cir) {
-        if (InfiniteClient.INSTANCE.isSettingEnabled(SuperSight.class, "FullBright")
-                || InfiniteClient.INSTANCE.isFeatureEnabled(XRay.class)) cir.setReturnValue(1.0f);
+        if (FeatureFlags.fullBright || FeatureFlags.xray) cir.setReturnValue(1.0f);
     }
 
     @Inject(
@@ -2,6 +2,7 @@ package org.theinfinitys.mixin.client.rendering;
 
 import net.minecraft.client.gui.DrawContext;
 import net.minecraft.client.gui.hud.InGameHud;
+import net.minecraft.client.render.RenderTickCounter;
 import net.minecraft.entity.Entity;
 import net.minecraft.util.Identifier;
 import org.spongepowered.asm.mixin.Mixin;
@@ -9,11 +10,18 @@ import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Inject;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
 import org.theinfinitys.InfiniteClient;
+import org.theinfinitys.InfiniteEventBus;
 import org.theinfinitys.features.rendering.AntiOverlay;
 
 @Mixin(InGameHud.class)
 public class InGameHudMixin {
 
+  // AIMode などは HudRenderEvent のリスナーとして描画する
+  @Inject(method = "render", at = @At("TAIL"))
+  private void onRender(DrawContext context, RenderTickCounter tickCounter, CallbackInfo ci) {
+    InfiniteEventBus.INSTANCE.fireHudRender(context, tickCounter);
+  }
+
   @Inject(
       at = @At("HEAD"),
       method =
@@ -0,0 +1,31 @@
+package org.theinfinitys.mixin.client.rendering;
+
+import java.util.List;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.gui.DrawContext;
+import net.minecraft.client.gui.hud.InGameHud;
+import net.minecraft.client.render.RenderTickCounter;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+import org.theinfinitys.profiler.InfiniteProfiler;
+
+@Mixin(InGameHud.class)
+public class ProfilerHudMixin {
+
+  @Inject(method = "render", at = @At("TAIL"))
+  private void onRender(DrawContext context, RenderTickCounter tickCounter, CallbackInfo ci) {
+    if (!InfiniteProfiler.INSTANCE.getHudVisible() || !InfiniteProfiler.INSTANCE.getEnabled()) {
+      return;
+    }
+    // 表示行は1秒ごとに作り直されるので、ここでは描画のみ行う
+    List<String> lines = InfiniteProfiler.INSTANCE.getHudLines();
+    MinecraftClient client = MinecraftClient.getInstance();
+    int y = 2;
+    for (String line : lines) {
+      context.drawTextWithShadow(client.textRenderer, line, 2, y, 0xFFFFFFFF);
+      y += client.textRenderer.fontHeight + 1;
+    }
+  }
+}
@@ -2,20 +2,32 @@ package org.theinfinitys.mixin.client.rendering;
 
 import com.llamalad7.mixinextras.injector.wrapoperation.Operation;
 import com.llamalad7.mixinextras.injector.wrapoperation.WrapOperation;
+import java.util.List;
 import net.minecraft.block.BlockState;
+import net.minecraft.client.render.VertexConsumer;
 import net.minecraft.client.render.block.BlockModelRenderer;
+import net.minecraft.client.render.model.BlockModelPart;
+import net.minecraft.client.util.math.MatrixStack;
 import net.minecraft.item.ItemConvertible;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.Direction;
 import net.minecraft.world.BlockRenderView;
 import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Unique;
 import org.spongepowered.asm.mixin.injection.At;
-import org.theinfinitys.InfiniteClient;
+import org.spongepowered.asm.mixin.injection.ModifyVariable;
+import org.theinfinitys.FeatureFlags;
+import org.theinfinitys.FeatureHandle;
+import org.theinfinitys.FeatureRegistry;
 import org.theinfinitys.features.rendering.XRay;
+import org.theinfinitys.features.rendering.XRayTranslucency;
 
 @Mixin(BlockModelRenderer.class)
 public abstract class XRayBlockModelRendererMixin implements ItemConvertible {
 
+  @Unique
+  private static final FeatureHandle<XRay> XRAY = FeatureRegistry.INSTANCE.handle(XRay.class);
+
   /**
    * Makes X-Ray work when neither Sodium nor Indigo are running. Also gets called while Indigo is
    * running when breaking a block in survival mode or seeing a piston retract.
@@ -39,10 +51,10 @@ public abstract class XRayBlockModelRendererMixin implements ItemConvertible {
       Direction sideButFromTheOtherMethod,
       BlockPos pos // 現在のブロックの座標 (blockPos)
       ) {
-    XRay xray = InfiniteClient.INSTANCE.getFeature(XRay.class);
+    XRay xray = XRAY.get();
 
     // XRayが無効、または取得できない場合は、オリジナルのメソッドを呼び出して終了
-    if (xray == null || !InfiniteClient.INSTANCE.isFeatureEnabled(XRay.class)) {
+    if (xray == null || !FeatureFlags.xray) {
       return original.call(state, otherState, side);
     }
 
@@ -60,4 +72,29 @@ public abstract class XRayBlockModelRendererMixin implements ItemConvertible {
     // XRay機能が判断しなかった場合は、オリジナルのメソッドを呼び出す
     return original.call(state, otherState, side);
   }
+
+  /**
+   * XRay の Translucent モードで半透明のレイヤーに振り分けたブロックの頂点の不透明度を書き換える。
+   * ラッパーはスレッドごとに使い回すため、ブロックごとの割り当ては発生しない。
+   */
+  @ModifyVariable(
+      method =
+          "render(Lnet/minecraft/world/BlockRenderView;Ljava/util/List;Lnet/minecraft/block/BlockState;Lnet/minecraft/util/math/BlockPos;Lnet/minecraft/client/util/math/MatrixStack;Lnet/minecraft/client/render/VertexConsumer;ZI)V",
+      at = @At("HEAD"),
+      argsOnly = true)
+  private VertexConsumer onRender(
+      VertexConsumer vertexConsumer,
+      BlockRenderView world,
+      List<BlockModelPart> parts,
+      BlockState state,
+      BlockPos pos,
+      MatrixStack matrices,
+      VertexConsumer original,
+      boolean cull,
+      int overlay) {
+    if (!FeatureFlags.xray) {
+      return vertexConsumer;
+    }
+    return XRayTranslucency.INSTANCE.wrap(state, vertexConsumer);
+  }
 }
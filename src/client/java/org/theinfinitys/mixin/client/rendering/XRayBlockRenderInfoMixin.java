@@ -2,17 +2,19 @@ package org.theinfinitys.mixin.client.rendering;
 
 import net.fabricmc.fabric.impl.client.indigo.renderer.render.BlockRenderInfo;
 import net.minecraft.block.BlockState;
-import net.minecraft.client.MinecraftClient;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.Direction;
 import net.minecraft.world.BlockRenderView;
 import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.Pseudo;
 import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.Unique;
 import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Inject;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
-import org.theinfinitys.InfiniteClient;
+import org.theinfinitys.FeatureFlags;
+import org.theinfinitys.FeatureHandle;
+import org.theinfinitys.FeatureRegistry;
 import org.theinfinitys.features.rendering.XRay;
 
 @Pseudo
@@ -20,6 +22,13 @@ import org.theinfinitys.features.rendering.XRay;
 public abstract class XRayBlockRenderInfoMixin {
   @Shadow public BlockPos blockPos;
   @Shadow public BlockState blockState;
+  @Shadow public BlockRenderView blockView;
+
+  // BlockRenderInfo はワーカーのスレッドごとに作られるため、隣接座標の計算に使い回せる
+  @Unique private final BlockPos.Mutable infinite$neighborPos = new BlockPos.Mutable();
+
+  @Unique
+  private static final FeatureHandle<XRay> XRAY = FeatureRegistry.INSTANCE.handle(XRay.class);
 
   /**
    * This mixin hides and shows regular blocks when using X-Ray, if Indigo is running and Sodium is
@@ -27,10 +36,10 @@ public abstract class XRayBlockRenderInfoMixin {
    */
   @Inject(at = @At("HEAD"), method = "shouldDrawSide", cancellable = true)
   private void onShouldDrawSide(Direction face, CallbackInfoReturnable<Boolean> cir) {
-    XRay xray = InfiniteClient.INSTANCE.getFeature(XRay.class);
+    XRay xray = XRAY.get();
 
     // XRayが無効、または取得できない場合は、オリジナルのメソッドに処理を委ねる
-    if (xray == null || !InfiniteClient.INSTANCE.isFeatureEnabled(XRay.class)) {
+    if (xray == null || !FeatureFlags.xray) {
       return;
     }
 
@@ -42,17 +51,21 @@ public abstract class XRayBlockRenderInfoMixin {
       return; // 処理を終了
     }
 
-    // World（BlockRenderView）と隣接ブロックの状態を取得する
-    BlockRenderView world = MinecraftClient.getInstance().world;
-    if (world == null) {
+    // 露出マスクなどで決められる場合は、隣接ブロックを取得せずに結果を返す
+    Boolean decided = xray.decideWithoutNeighbor(blockState, blockPos);
+    if (decided != null) {
+      cir.setReturnValue(decided);
       return;
     }
 
-    // 隣接ブロックの座標を計算
-    BlockPos neighborPos = blockPos.offset(face);
+    // ワーカーが構築中の領域（BlockRenderView）から隣接ブロックの状態を取得する。ライブのワールドは参照しない
+    BlockRenderView world = blockView;
+    if (world == null) {
+      return;
+    }
 
     // 隣接ブロックの状態を取得
-    BlockState neighborState = world.getBlockState(neighborPos);
+    BlockState neighborState = world.getBlockState(infinite$neighborPos.set(blockPos, face));
 
     // 新しいシグネチャで shouldDrawSide を呼び出す
     Boolean shouldDraw = xray.shouldDrawSide(blockState, blockPos, face, neighborState);
@@ -10,13 +10,19 @@ import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.Direction;
 import net.minecraft.world.BlockRenderView;
 import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Unique;
 import org.spongepowered.asm.mixin.injection.At;
-import org.theinfinitys.InfiniteClient;
+import org.theinfinitys.FeatureFlags;
+import org.theinfinitys.FeatureHandle;
+import org.theinfinitys.FeatureRegistry;
 import org.theinfinitys.features.rendering.XRay;
 
 @Mixin(FluidRenderer.class)
 public class XRayFluidRendererMixin {
 
+  @Unique
+  private static final FeatureHandle<XRay> XRAY = FeatureRegistry.INSTANCE.handle(XRay.class);
+
   /** Hides and shows fluids when using X-Ray without Sodium installed. */
   @WrapOperation(
       at =
@@ -36,10 +42,10 @@ public class XRayFluidRendererMixin {
       VertexConsumer vertexConsumer,
       BlockState blockState, // レンダリング対象の流体ブロックの状態
       FluidState fluidState) {
-    XRay xray = InfiniteClient.INSTANCE.getFeature(XRay.class);
+    XRay xray = XRAY.get();
 
     // XRayが無効、または取得できない場合は、オリジナルのメソッドを呼び出して終了
-    if (xray == null || !InfiniteClient.INSTANCE.isFeatureEnabled(XRay.class)) {
+    if (xray == null || !FeatureFlags.xray) {
       return original.call(side, height, neighborState);
     }
 
@@ -0,0 +1,30 @@
+package org.theinfinitys.mixin.client.rendering;
+
+import net.minecraft.client.render.VertexConsumer;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Pseudo;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+import org.theinfinitys.FeatureFlags;
+import org.theinfinitys.features.rendering.XRayTranslucency;
+
+@Pseudo
+@Mixin(
+    targets = "net.fabricmc.fabric.impl.client.indigo.renderer.render.TerrainRenderContext",
+    remap = false)
+public abstract class XRayIndigoTerrainMixin {
+
+  /**
+   * Indigo がセクションを構築するときは BlockModelRenderer を通らないため、レイヤーごとの出力先を取得する時点で
+   * 半透明に振り分けたブロックの頂点の不透明度を書き換える。Indigo の内部実装に依存するため、見つからなければ適用しない。
+   * 注入されたかは InfiniteMixinPlugin が記録し、失敗していれば XRay は警告を出して Translucent モードを Normal モードで描画する。
+   */
+  @Inject(method = "getVertexConsumer", at = @At("RETURN"), cancellable = true, require = 0)
+  private void onGetVertexConsumer(CallbackInfoReturnable<VertexConsumer> cir) {
+    if (!FeatureFlags.xray) {
+      return;
+    }
+    cir.setReturnValue(XRayTranslucency.INSTANCE.wrapCurrent(cir.getReturnValue()));
+  }
+}
@@ -1,7 +1,31 @@
 package org.theinfinitys.mixin.client.rendering;
 
+import net.minecraft.block.BlockState;
+import net.minecraft.client.render.BlockRenderLayer;
 import net.minecraft.client.render.RenderLayers;
 import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+import org.theinfinitys.FeatureFlags;
+import org.theinfinitys.features.rendering.XRayTranslucency;
 
 @Mixin(RenderLayers.class)
-public abstract class XRayRenderLayersMixin {}
+public abstract class XRayRenderLayersMixin {
+
+  /**
+   * XRay の Translucent モードで、カメラに近いセクションの対象外のブロックを半透明のレイヤーに振り分ける。
+   * セクションの構築中以外（落下中のブロックなど）は XRayTranslucency が null を返すため、元のレイヤーのまま。
+   */
+  @Inject(method = "getBlockLayer", at = @At("HEAD"), cancellable = true)
+  private static void onGetBlockLayer(
+      BlockState state, CallbackInfoReturnable<BlockRenderLayer> cir) {
+    if (!FeatureFlags.xray) {
+      return;
+    }
+    BlockRenderLayer layer = XRayTranslucency.INSTANCE.blockLayerFor(state);
+    if (layer != null) {
+      cir.setReturnValue(layer);
+    }
+  }
+}
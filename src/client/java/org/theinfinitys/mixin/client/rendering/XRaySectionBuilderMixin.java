@@ -0,0 +1,37 @@
+package org.theinfinitys.mixin.client.rendering;
+
+import com.mojang.blaze3d.systems.VertexSorter;
+import net.minecraft.client.render.chunk.BlockBufferAllocatorStorage;
+import net.minecraft.client.render.chunk.ChunkRendererRegion;
+import net.minecraft.client.render.chunk.SectionBuilder;
+import net.minecraft.util.math.ChunkSectionPos;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+import org.theinfinitys.features.rendering.XRayTranslucency;
+
+@Mixin(SectionBuilder.class)
+public class XRaySectionBuilderMixin {
+
+  // 構築するセクションの位置から、Translucent モードで半透明にするセクションかどうかをスレッドごとに記録する
+  @Inject(method = "build", at = @At("HEAD"))
+  private void onBuildHead(
+      ChunkSectionPos sectionPos,
+      ChunkRendererRegion renderRegion,
+      VertexSorter vertexSorter,
+      BlockBufferAllocatorStorage allocatorStorage,
+      CallbackInfoReturnable<SectionBuilder.RenderData> cir) {
+    XRayTranslucency.INSTANCE.beginSection(sectionPos);
+  }
+
+  @Inject(method = "build", at = @At("RETURN"))
+  private void onBuildReturn(
+      ChunkSectionPos sectionPos,
+      ChunkRendererRegion renderRegion,
+      VertexSorter vertexSorter,
+      BlockBufferAllocatorStorage allocatorStorage,
+      CallbackInfoReturnable<SectionBuilder.RenderData> cir) {
+    XRayTranslucency.INSTANCE.endSection();
+  }
+}
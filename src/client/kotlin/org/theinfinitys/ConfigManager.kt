@@ -9,11 +9,14 @@ import kotlinx.serialization.json.decodeFromJsonElement
 import net.fabricmc.loader.api.FabricLoader
 import net.minecraft.client.MinecraftClient
 import net.minecraft.util.WorldSavePath
+import org.theinfinitys.profiler.InfiniteProfiler
+import org.theinfinitys.profiler.measure
 import org.theinfinitys.settings.InfiniteSetting
 import java.nio.file.Path
 
 object ConfigManager {
     private val json = Json { prettyPrint = true }
+    private val saveSection = InfiniteProfiler.section("config:save")
 
     @Serializable
     data class FeatureConfig(
@@ -28,7 +31,7 @@ object ConfigManager {
     )
 
     // Function to get config directory based on server type
-    private fun getConfigDirectory(): Path {
+    internal fun getConfigDirectory(): Path {
         val gameDir = FabricLoader.getInstance().gameDir
         val configDir = gameDir.resolve("infinite").resolve("config")
 
@@ -54,7 +57,9 @@ object ConfigManager {
         }
     }
 
-    fun saveConfig() {
+    fun saveConfig() = saveSection.measure { writeConfig() }
+
+    private fun writeConfig() {
         val configDir = getConfigDirectory().toFile()
         if (!configDir.exists()) {
             configDir.mkdirs()
@@ -119,15 +124,13 @@ object ConfigManager {
             val jsonString = configFile.readText()
             val appConfig = json.decodeFromString(AppConfig.serializer(), jsonString)
 
+            // 有効・無効の変更は一つのトランザクションにまとめ、ワールドの再描画などの副作用は最後に一度だけ実行する
+            val transaction = FeatureTransaction()
             appConfig.features.forEach { featureConfig ->
                 featureCategories.flatMap { it.features }.find { it.name == featureConfig.name }?.let { feature ->
                     val configurableFeature = feature.instance as? ConfigurableFeature
                     if (configurableFeature != null) {
-                        if (featureConfig.enabled) {
-                            configurableFeature.enable()
-                        } else {
-                            configurableFeature.disable()
-                        }
+                        transaction.set(configurableFeature, featureConfig.enabled)
                         featureConfig.settings.forEach { (settingName, jsonElement) ->
                             configurableFeature.settings.find { it.name == settingName }?.let { setting ->
                                 when (setting) {
@@ -189,6 +192,7 @@ object ConfigManager {
                     }
                 }
             }
+            transaction.commit()
             InfiniteClient.log("Configuration loaded from ${configFile.absolutePath}")
         } catch (e: Exception) {
             InfiniteClient.error("Failed to load configuration: ${e.message}")
@@ -3,6 +3,7 @@ package org.theinfinitys
 import com.mojang.brigadier.CommandDispatcher
 import net.fabricmc.fabric.api.client.command.v2.FabricClientCommandSource
 import org.lwjgl.glfw.GLFW
+import org.theinfinitys.profiler.InfiniteProfiler
 import org.theinfinitys.settings.InfiniteSetting
 import org.theinfinitys.settings.Property
 
@@ -14,48 +15,42 @@ abstract class ConfigurableFeature(
     val toggleKeyBind: Property<Int> = Property(GLFW.GLFW_DONT_CARE)
     open val available = true
 
-    // リスナーの同期に使用する専用のロックオブジェクト
-    private val listenerLock = Any()
-
-    // 依存関係・矛盾関係のリスナーを保持するリスト
-    private val dependencyListeners = mutableListOf<() -> Unit>()
-
     init {
-        // Featureが有効になったとき
+        // 依存・矛盾の解決は FeatureTransaction が enabled を変更する前に済ませている
         enabled.addListener { _, newValue ->
             disabled.value = !newValue
             if (newValue) {
-                // 依存・矛盾の即時解決
-                resolve()
                 enabled()
             } else {
-                // Featureが無効になったとき
                 disabled()
             }
         }
 
-        // Featureが無効になったとき
+        // disabled は enabled の反転を保持するだけで、ライフサイクルの呼び出しは enabled のリスナーに一本化する。
+        // 両方のリスナーから enabled()/disabled() を呼ぶと、一回の切り替えで二回ずつ呼ばれてしまう
         disabled.addListener { _, newValue ->
             enabled.value = !newValue
-            if (newValue) {
-                disabled()
-            } else {
-                resolve()
-                enabled()
-            }
         }
     }
 
     fun reset() {
-        enabled.value = initialEnabled
+        FeatureTransaction.run { set(this@ConfigurableFeature, initialEnabled) }
         settings.forEach { it.reset() }
     }
 
     abstract val settings: List<InfiniteSetting<*>>
+
+    // 依存関係・矛盾関係は FeatureGraph が起動時に一度だけ解決する
     open val depends: List<Class<out ConfigurableFeature>> = emptyList()
     open val conflicts: List<Class<out ConfigurableFeature>> = emptyList()
     open fun tick() {}
 
+    // tick() を呼び出すティック間隔。1 なら毎ティック、N なら N ティックごとに FeatureTickScheduler から呼ばれる
+    open val tickInterval: Int = 1
+
+    // tick() の計測区間
+    internal val tickSection: InfiniteProfiler.Section = InfiniteProfiler.section("tick:${javaClass.simpleName}")
+
     open fun start() {}
 
     // --- リスナー登録用API ---
@@ -67,62 +62,21 @@ abstract class ConfigurableFeature(
         enabled.removeListener(listener)
     }
 
-    private fun startResolver() {
-        // 【スレッドセーフ化】専用のロックオブジェクトで同期
-        synchronized(listenerLock) {
-            for (depend in depends) {
-                val feature = InfiniteClient.getFeature(depend) ?: continue
-                val listener: (Boolean, Boolean) -> Unit = { _, newDisabled ->
-                    if (newDisabled && isEnabled()) {
-                        disable()
-                    }
-                }
-                feature.disabled.addListener(listener)
-                dependencyListeners.add { feature.disabled.removeListener(listener) }
-            }
-            for (conflict in conflicts) {
-                val feature = InfiniteClient.getFeature(conflict) ?: continue
-                val listener: (Boolean, Boolean) -> Unit = { _, newEnabled ->
-                    if (newEnabled && isEnabled()) {
-                        disable()
-                    }
-                }
-                feature.enabled.addListener(listener)
-                dependencyListeners.add { feature.enabled.removeListener(listener) }
-            }
-        }
-    }
-
     open fun stop() {}
 
-    private fun stopResolver() {
-        // 【スレッドセーフ化】専用のロックオブジェクトで同期
-        synchronized(listenerLock) {
-            dependencyListeners.forEach { it() }
-            dependencyListeners.clear()
-        }
-    }
-
     open fun enabled() {}
 
     open fun disabled() {}
 
+    // 依存先の有効化・矛盾先と依存元の無効化を含めて、一つのトランザクションとして適用する
     fun enable() {
         if (isEnabled()) return
-
-        // 1. 依存関係の監視を開始し、リスナーを登録
-        startResolver()
-        // 2. プロパティの値を変更 (Property.setValue()を実行)
-        enabled.value = true
+        FeatureTransaction.run { enable(this@ConfigurableFeature) }
     }
 
     fun disable() {
         if (isDisabled()) return
-
-        // 1. 依存関係の監視を停止し、リスナーを解除
-        stopResolver()
-        // 2. プロパティの値を変更 (Property.setValue()を実行)
-        disabled.value = true
+        FeatureTransaction.run { disable(this@ConfigurableFeature) }
     }
 
     fun isEnabled(): Boolean = enabled.value
@@ -131,20 +85,40 @@ abstract class ConfigurableFeature(
 
     fun getSetting(name: String): InfiniteSetting<*>? = settings.find { it.name == name }
 
-    open fun registerCommands(dispatcher: CommandDispatcher<FabricClientCommandSource>) {}
+    /**
+     * フィーチャーの有効・無効や設定が変わるたびに update を呼び出します。
+     * Mixin のホットパスから読まれる FeatureFlags を更新するために使用します。
+     * settings の初期化後（サブクラスの init）に呼び出してください。
+     */
+    protected fun mirrorFlags(update: () -> Unit) {
+        enabled.addListener { _, _ -> update() }
+        settings.forEach { setting -> setting.addChangeListener { update() } }
+        update()
+    }
 
-    private fun resolve() {
-        for (depend in depends) {
-            val feature = InfiniteClient.getFeature(depend) ?: continue
-            if (feature.isDisabled()) {
-                feature.enable()
-            }
-        }
-        for (conflict in conflicts) {
-            val feature = InfiniteClient.getFeature(conflict) ?: continue
-            if (feature.isEnabled()) {
-                feature.disable()
-            }
-        }
+    // --- 型付きハンドルAPI ---
+    // 名前による検索はフィーチャーの初期化時に一度だけ行い、以降はハンドル経由でプリミティブ値を読む。
+    // 設定名の誤りは初期化時に例外として検出される。
+
+    protected fun booleanHandle(name: String): InfiniteSetting.BooleanHandle =
+        requireSetting<InfiniteSetting.BooleanSetting>(name).handle()
+
+    protected fun intHandle(name: String): InfiniteSetting.IntHandle = requireSetting<InfiniteSetting.IntSetting>(name).handle()
+
+    protected fun floatHandle(name: String): InfiniteSetting.FloatHandle =
+        requireSetting<InfiniteSetting.FloatSetting>(name).handle()
+
+    @Suppress("UNCHECKED_CAST")
+    protected fun <E : Enum<E>> enumHandle(name: String): InfiniteSetting.EnumHandle<E> =
+        (requireSetting<InfiniteSetting.EnumSetting<*>>(name) as InfiniteSetting.EnumSetting<E>).handle()
+
+    protected inline fun <reified S : InfiniteSetting<*>> requireSetting(name: String): S {
+        val setting = getSetting(name) ?: throw IllegalStateException("${javaClass.simpleName} に設定 '$name' はありません。")
+        return setting as? S
+            ?: throw IllegalStateException(
+                "${javaClass.simpleName} の設定 '$name' は ${S::class.simpleName} ではありません。",
+            )
     }
+
+    open fun registerCommands(dispatcher: CommandDispatcher<FabricClientCommandSource>) {}
 }
@@ -0,0 +1,42 @@
+package org.theinfinitys
+
+/**
+ * Mixin のオーバーライドから毎フレーム・毎ティック読まれる、フィーチャーの状態と設定値のミラー。
+ *
+ * 各フィーチャーが mirrorFlags で有効・無効と設定の変更時に書き込みます。
+ * Java からは static フィールドとして読めるので、すべて無効な通常時は volatile フィールドを一回読むだけで済みます。
+ */
+object FeatureFlags {
+    // SuperSight
+    @JvmField
+    @Volatile
+    var fullBright = false
+
+    @JvmField
+    @Volatile
+    var antiBlind = false
+
+    // FreeCamera
+    @JvmField
+    @Volatile
+    var freeCamera = false
+
+    // SafeWalk
+    @JvmField
+    @Volatile
+    var safeWalk = false
+
+    // Reach
+    @JvmField
+    @Volatile
+    var reach = false
+
+    @JvmField
+    @Volatile
+    var reachDistance = 0f
+
+    // XRay
+    @JvmField
+    @Volatile
+    var xray = false
+}
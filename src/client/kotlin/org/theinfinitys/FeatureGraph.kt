@@ -0,0 +1,135 @@
+package org.theinfinitys
+
+import java.util.IdentityHashMap
+
+/**
+ * フィーチャー間の依存関係（depends）と矛盾関係（conflicts）のグラフ。
+ *
+ * onInitializeClient で一度だけ構築され、依存関係の循環と、依存先と矛盾する宣言はその時点で例外として検出されます。
+ * 矛盾関係は双方向として扱います。
+ * 構築後は読み取り専用で、FeatureTransaction が有効・無効の伝播と適用順序の決定に使用します。
+ */
+object FeatureGraph {
+    private class Node(
+        val feature: ConfigurableFeature,
+    ) {
+        var rank = 0
+        var dependencies: Array<ConfigurableFeature> = emptyArray()
+        var dependents: Array<ConfigurableFeature> = emptyArray()
+        var conflicts: Array<ConfigurableFeature> = emptyArray()
+    }
+
+    private val nodes = IdentityHashMap<ConfigurableFeature, Node>()
+
+    @Volatile
+    private var built = false
+
+    fun build() {
+        if (built) return
+        synchronized(this) {
+            if (built) return
+            val features = FeatureRegistry.features
+            val dependencies = IdentityHashMap<ConfigurableFeature, List<ConfigurableFeature>>()
+            val dependents = IdentityHashMap<ConfigurableFeature, MutableList<ConfigurableFeature>>()
+            val conflicts = IdentityHashMap<ConfigurableFeature, MutableSet<ConfigurableFeature>>()
+            for (feature in features) {
+                dependencies[feature] = feature.depends.mapNotNull { FeatureRegistry.get(it) }.distinct()
+                for (conflictClass in feature.conflicts) {
+                    val other = FeatureRegistry.get(conflictClass) ?: continue
+                    conflicts.getOrPut(feature) { linkedSetOf() }.add(other)
+                    conflicts.getOrPut(other) { linkedSetOf() }.add(feature)
+                }
+            }
+            for ((feature, list) in dependencies) {
+                for (dependency in list) {
+                    dependents.getOrPut(dependency) { mutableListOf() }.add(feature)
+                }
+            }
+
+            val order = topologicalOrder(features, dependencies)
+            for ((index, feature) in order.withIndex()) {
+                nodes[feature] =
+                    Node(feature).apply {
+                        rank = index
+                        this.dependencies = dependencies[feature].orEmpty().toTypedArray()
+                        this.dependents = dependents[feature].orEmpty().toTypedArray()
+                        this.conflicts = conflicts[feature].orEmpty().toTypedArray()
+                    }
+            }
+            for (feature in order) {
+                verifyNoConflictWithDependencies(feature)
+            }
+            built = true
+        }
+    }
+
+    /**
+     * 依存先が先に来る順序（トポロジカル順序）での位置を返します。
+     */
+    fun rank(feature: ConfigurableFeature): Int = node(feature)?.rank ?: Int.MAX_VALUE
+
+    fun dependenciesOf(feature: ConfigurableFeature): Array<ConfigurableFeature> = node(feature)?.dependencies ?: emptyArray()
+
+    fun dependentsOf(feature: ConfigurableFeature): Array<ConfigurableFeature> = node(feature)?.dependents ?: emptyArray()
+
+    fun conflictsOf(feature: ConfigurableFeature): Array<ConfigurableFeature> = node(feature)?.conflicts ?: emptyArray()
+
+    private fun node(feature: ConfigurableFeature): Node? {
+        build()
+        return nodes[feature]
+    }
+
+    // 依存先から順に並べる。循環があれば循環経路を含めて例外を投げる
+    private fun topologicalOrder(
+        features: List<ConfigurableFeature>,
+        dependencies: Map<ConfigurableFeature, List<ConfigurableFeature>>,
+    ): List<ConfigurableFeature> {
+        val order = ArrayList<ConfigurableFeature>(features.size)
+        val visiting = IdentityHashMap<ConfigurableFeature, Boolean>()
+        val path = ArrayDeque<ConfigurableFeature>()
+
+        fun visit(feature: ConfigurableFeature) {
+            when (visiting[feature]) {
+                true -> {
+                    val cycle = path.dropWhile { it !== feature } + feature
+                    throw IllegalStateException(
+                        "フィーチャーの依存関係が循環しています: ${cycle.joinToString(" -> ") { it.javaClass.simpleName }}",
+                    )
+                }
+                false -> return
+                null -> {}
+            }
+            visiting[feature] = true
+            path.addLast(feature)
+            for (dependency in dependencies[feature].orEmpty()) {
+                visit(dependency)
+            }
+            path.removeLast()
+            visiting[feature] = false
+            order.add(feature)
+        }
+
+        features.forEach { visit(it) }
+        return order
+    }
+
+    // 推移的な依存先のいずれかと矛盾するフィーチャーは有効にできないため、宣言の誤りとして扱う
+    // 構築中に呼ばれるため、build() を経由せずにノードを直接参照する
+    private fun verifyNoConflictWithDependencies(feature: ConfigurableFeature) {
+        val node = nodes.getValue(feature)
+        val conflicts = node.conflicts
+        if (conflicts.isEmpty()) return
+        val stack = ArrayDeque(node.dependencies.asList())
+        val seen = IdentityHashMap<ConfigurableFeature, Unit>()
+        while (stack.isNotEmpty()) {
+            val dependency = stack.removeLast()
+            if (seen.put(dependency, Unit) != null) continue
+            if (conflicts.any { it === dependency }) {
+                throw IllegalStateException(
+                    "${feature.javaClass.simpleName} は依存先の ${dependency.javaClass.simpleName} と矛盾しています。",
+                )
+            }
+            stack.addAll(nodes.getValue(dependency).dependencies)
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package org.theinfinitys
+
+import java.util.IdentityHashMap
+
+/**
+ * フィーチャーのクラスとインスタンスを対応付けるレジストリ。
+ *
+ * onInitializeClient で一度だけ構築され、以降の検索は IdentityHashMap の参照のみで完了します。
+ * 構築後は読み取り専用なので、チャンクビルダーなどの別スレッドからも安全に参照できます。
+ */
+object FeatureRegistry {
+    private val byClass = IdentityHashMap<Class<*>, ConfigurableFeature>()
+    private val handles = IdentityHashMap<Class<*>, FeatureHandle<*>>()
+    private var featureList: List<ConfigurableFeature> = emptyList()
+
+    @Volatile
+    private var built = false
+
+    /**
+     * featureCategories からレジストリを構築します。二回目以降の呼び出しは何もしません。
+     */
+    fun build() {
+        if (built) return
+        synchronized(this) {
+            if (built) return
+            val list = mutableListOf<ConfigurableFeature>()
+            for (category in featureCategories) {
+                for (feature in category.features) {
+                    val instance = feature.instance as? ConfigurableFeature ?: continue
+                    byClass.putIfAbsent(instance.javaClass, instance)
+                    list.add(instance)
+                }
+            }
+            featureList = list
+            built = true
+        }
+    }
+
+    /**
+     * 登録されているすべての ConfigurableFeature を featureCategories の順序で返します。
+     */
+    val features: List<ConfigurableFeature>
+        get() {
+            build()
+            return featureList
+        }
+
+    /**
+     * 指定されたクラスのフィーチャーインスタンスを取得します。
+     */
+    fun <T : ConfigurableFeature> get(featureClass: Class<T>): T? {
+        build()
+        @Suppress("UNCHECKED_CAST")
+        return byClass[featureClass] as T?
+    }
+
+    /**
+     * Mixin の static final フィールドに保持するためのハンドルを取得します。
+     * 同じクラスに対しては常に同じハンドルを返します。
+     */
+    fun <T : ConfigurableFeature> handle(featureClass: Class<T>): FeatureHandle<T> =
+        synchronized(handles) {
+            @Suppress("UNCHECKED_CAST")
+            handles.getOrPut(featureClass) { FeatureHandle(featureClass) } as FeatureHandle<T>
+        }
+}
+
+/**
+ * フィーチャーインスタンスへの参照を保持するハンドル。
+ *
+ * Mixin のクラス初期化はレジストリの構築より先に走ることがあるため、インスタンスは初回アクセス時に解決します。
+ * 解決後の get() はフィールドの読み取りのみです。
+ */
+class FeatureHandle<T : ConfigurableFeature> internal constructor(
+    private val featureClass: Class<T>,
+) {
+    @Volatile
+    private var instance: T? = null
+
+    fun get(): T? = instance ?: FeatureRegistry.get(featureClass).also { instance = it }
+
+    fun isEnabled(): Boolean {
+        val feature = get()
+        return feature != null && feature.isEnabled()
+    }
+}
@@ -0,0 +1,62 @@
+package org.theinfinitys
+
+/**
+ * 有効なフィーチャーだけを tick するスケジューラ。
+ *
+ * 各フィーチャーの enabled プロパティの変更を購読し、有効なフィーチャーの配列を再構築します。
+ * tick() は配列を走査するだけなので、カタログ全体を毎ティック走査することはありません。
+ * ConfigurableFeature.tickInterval が 1 より大きいフィーチャーは、そのティック間隔ごとにのみ呼ばれます。
+ */
+object FeatureTickScheduler {
+    private val lock = Any()
+
+    @Volatile
+    private var tickers: Array<ConfigurableFeature> = emptyArray()
+    private var installed = false
+    private var tickCount = 0L
+
+    /**
+     * レジストリのすべてのフィーチャーに enabled のリスナーを登録します。
+     */
+    fun install() {
+        synchronized(lock) {
+            if (installed) return
+            installed = true
+        }
+        for (feature in FeatureRegistry.features) {
+            feature.addEnabledChangeListener { _, _ -> rebuild() }
+        }
+        rebuild()
+    }
+
+    /**
+     * 有効なフィーチャーの配列を featureCategories の順序で作り直します。
+     */
+    private fun rebuild() {
+        synchronized(lock) {
+            tickers = FeatureRegistry.features.filter { it.isEnabled() }.toTypedArray()
+        }
+    }
+
+    /**
+     * END_CLIENT_TICK から毎ティック呼び出されます。
+     */
+    fun tick() {
+        val current = tickers
+        val tick = tickCount++
+        for (feature in current) {
+            // 同じティック内で先に tick したフィーチャーによって無効化されている場合がある
+            if (!feature.isEnabled()) continue
+            val interval = feature.tickInterval
+            if (interval <= 1 || tick % interval == 0L) {
+                val section = feature.tickSection
+                val token = section.begin()
+                try {
+                    feature.tick()
+                } finally {
+                    section.end(token)
+                }
+            }
+        }
+    }
+}
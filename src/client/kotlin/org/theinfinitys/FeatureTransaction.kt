@@ -0,0 +1,128 @@
+package org.theinfinitys
+
+import java.util.IdentityHashMap
+
+/**
+ * フィーチャーの有効・無効の変更をまとめて適用するトランザクション。
+ *
+ * 要求された変更は FeatureGraph に従って依存先・依存元・矛盾先へ伝播され、
+ * 無効化は依存元から、有効化は依存先から順に適用されます。
+ * enabled()/disabled() から schedule() された副作用（ワールドの再描画など）は、
+ * 最も外側のトランザクションの終了時に一度だけ実行されます。
+ *
+ * フィーチャーの切り替えはクライアントスレッドで行う前提です。
+ */
+class FeatureTransaction {
+    // 要求された最終状態。伝播の結果もここに書き込む
+    private val target = IdentityHashMap<ConfigurableFeature, Boolean>()
+    private var committed = false
+
+    fun enable(feature: ConfigurableFeature): FeatureTransaction = set(feature, true)
+
+    fun disable(feature: ConfigurableFeature): FeatureTransaction = set(feature, false)
+
+    fun set(
+        feature: ConfigurableFeature,
+        enabled: Boolean,
+    ): FeatureTransaction {
+        check(!committed) { "コミット済みのトランザクションは変更できません。" }
+        if (enabled) requestEnable(feature) else requestDisable(feature)
+        return this
+    }
+
+    private fun stateOf(feature: ConfigurableFeature): Boolean = target[feature] ?: feature.isEnabled()
+
+    private fun requestEnable(feature: ConfigurableFeature) {
+        if (target[feature] == true) return
+        target[feature] = true
+        for (dependency in FeatureGraph.dependenciesOf(feature)) {
+            requestEnable(dependency)
+        }
+        for (conflict in FeatureGraph.conflictsOf(feature)) {
+            if (stateOf(conflict)) requestDisable(conflict)
+        }
+    }
+
+    private fun requestDisable(feature: ConfigurableFeature) {
+        if (target[feature] == false) return
+        target[feature] = false
+        for (dependent in FeatureGraph.dependentsOf(feature)) {
+            if (stateOf(dependent)) requestDisable(dependent)
+        }
+    }
+
+    /**
+     * 変更を適用します。入れ子のトランザクションの副作用は最も外側のトランザクションの終了時にまとめて実行されます。
+     */
+    fun commit() {
+        check(!committed) { "トランザクションはすでにコミットされています。" }
+        committed = true
+
+        val disables = target.entries.filter { !it.value && it.key.isEnabled() }.map { it.key }
+        val enables = target.entries.filter { it.value && !it.key.isEnabled() }.map { it.key }
+        if (disables.isEmpty() && enables.isEmpty()) return
+
+        depth++
+        try {
+            // 依存元から無効化し、依存先から有効化する
+            for (feature in disables.sortedByDescending { FeatureGraph.rank(it) }) {
+                feature.enabled.value = false
+            }
+            for (feature in enables.sortedBy { FeatureGraph.rank(it) }) {
+                feature.enabled.value = true
+            }
+        } finally {
+            depth--
+            if (depth == 0) runSideEffects()
+        }
+    }
+
+    /**
+     * トランザクションの終了時に一度だけ実行される副作用。同じインスタンスは何度 schedule() されても一回にまとめられる。
+     */
+    class SideEffect(
+        val name: String,
+        private val action: () -> Unit,
+    ) {
+        internal fun run() = action()
+    }
+
+    companion object {
+        private var depth = 0
+        private val pending = LinkedHashSet<SideEffect>()
+
+        /**
+         * トランザクションを作成し、ブロックの終了時にコミットします。
+         */
+        inline fun run(block: FeatureTransaction.() -> Unit) {
+            val transaction = FeatureTransaction()
+            transaction.block()
+            transaction.commit()
+        }
+
+        /**
+         * 副作用を登録します。トランザクションの外で呼ばれた場合はすぐに実行します。
+         */
+        fun schedule(effect: SideEffect) {
+            if (depth == 0) {
+                effect.run()
+            } else {
+                pending.add(effect)
+            }
+        }
+
+        private fun runSideEffects() {
+            while (pending.isNotEmpty()) {
+                val effects = pending.toList()
+                pending.clear()
+                for (effect in effects) {
+                    try {
+                        effect.run()
+                    } catch (e: Exception) {
+                        InfiniteClient.error("${effect.name} の実行に失敗しました: ${e.message}")
+                    }
+                }
+            }
+        }
+    }
+}
@@ -17,11 +17,13 @@ object InfiniteClient : ClientModInitializer {
     private val LOGGER = LoggerFactory.getLogger("InfiniteClient")
 
     override fun onInitializeClient() {
+        FeatureRegistry.build()
+        FeatureGraph.build()
+        FeatureTickScheduler.install()
+        InfiniteEventBus.install()
         InfiniteKeyBind.registerKeybindings()
-        for (category in featureCategories) {
-            for (features in category.features) {
-                (features.instance as? ConfigurableFeature)?.start()
-            }
+        for (feature in FeatureRegistry.features) {
+            feature.start()
         }
         ClientPlayConnectionEvents.JOIN.register { _, _, _ ->
 
@@ -38,10 +40,8 @@ object InfiniteClient : ClientModInitializer {
         }
 
         ClientPlayConnectionEvents.DISCONNECT.register { _, _ ->
-            for (category in featureCategories) {
-                for (features in category.features) {
-                    (features.instance as? ConfigurableFeature)?.stop()
-                }
+            for (feature in FeatureRegistry.features) {
+                feature.stop()
             }
             ConfigManager.saveConfig()
         }
@@ -202,20 +202,11 @@ object InfiniteClient : ClientModInitializer {
 
      * 指定されたクラスのフィーチャーインスタンスを取得します。
 
-     */
+     * FeatureRegistry の IdentityHashMap を参照するため、カテゴリの走査は行いません。
 
-    fun <T : ConfigurableFeature> getFeature(featureClass: Class<T>): T? {
-        for (category in featureCategories) {
-            for (feature in category.features) {
-                if (featureClass.isInstance(feature.instance)) {
-                    @Suppress("UNCHECKED_CAST")
-                    return feature.instance as T
-                }
-            }
-        }
+     */
 
-        return null
-    }
+    fun <T : ConfigurableFeature> getFeature(featureClass: Class<T>): T? = FeatureRegistry.get(featureClass)
 
     /**
 
@@ -0,0 +1,153 @@
+package org.theinfinitys
+
+import net.minecraft.client.MinecraftClient
+import net.minecraft.client.gui.DrawContext
+import net.minecraft.client.network.ClientPlayerEntity
+import net.minecraft.client.render.RenderTickCounter
+import net.minecraft.entity.Entity
+import net.minecraft.entity.player.PlayerEntity
+import net.minecraft.network.packet.Packet
+import org.theinfinitys.profiler.InfiniteProfiler
+
+/**
+ * Mixin からフィーチャーへイベントを配信するバス。
+ *
+ * 各チャンネルは有効なリスナーの配列を保持し、フィーチャーの有効・無効が切り替わったときにだけ作り直します。
+ * 配信は配列を一度走査するだけで、リスナーがいなければ何もせずに戻ります。
+ * イベントオブジェクトはクライアントスレッドで再利用されるため、配信ごとの割り当ては発生しません。
+ */
+object InfiniteEventBus {
+    private val lock = Any()
+    private var installed = false
+
+    val packetSend =
+        EventChannel("PacketSend", PacketSendListener::class.java, ::PacketSendEvent) { listener, event ->
+            listener.onPacketSend(event)
+        }
+    val attackEntity =
+        EventChannel("AttackEntity", AttackEntityListener::class.java, ::AttackEntityEvent) { listener, event ->
+            listener.onAttackEntity(event)
+        }
+    val hudRender =
+        EventChannel("HudRender", HudRenderListener::class.java, ::HudRenderEvent) { listener, event ->
+            listener.onHudRender(event)
+        }
+    val playerTick =
+        EventChannel("PlayerTick", PlayerTickListener::class.java, ::PlayerTickEvent) { listener, event ->
+            listener.onPlayerTick(event)
+        }
+
+    private val channels = listOf(packetSend, attackEntity, hudRender, playerTick)
+
+    /**
+     * レジストリのすべてのフィーチャーに enabled のリスナーを登録します。
+     */
+    fun install() {
+        synchronized(lock) {
+            if (installed) return
+            installed = true
+        }
+        for (feature in FeatureRegistry.features) {
+            feature.addEnabledChangeListener { _, _ -> rebuild() }
+        }
+        rebuild()
+    }
+
+    private fun rebuild() {
+        synchronized(lock) {
+            val features = FeatureRegistry.features
+            channels.forEach { it.rebuild(features) }
+        }
+    }
+
+    // --- Mixin からの発行用 API ---
+    // キャンセル可能なイベントは、キャンセルされた場合に true を返します。
+
+    fun firePacketSend(packet: Packet<*>): Boolean {
+        if (!packetSend.hasListeners()) return false
+        val event = packetSend.acquire()
+        event.packet = packet
+        return packetSend.dispatch(event)
+    }
+
+    fun fireAttackEntity(
+        player: PlayerEntity,
+        target: Entity,
+    ): Boolean {
+        if (!attackEntity.hasListeners()) return false
+        val event = attackEntity.acquire()
+        event.player = player
+        event.target = target
+        return attackEntity.dispatch(event)
+    }
+
+    fun fireHudRender(
+        context: DrawContext,
+        tickCounter: RenderTickCounter,
+    ) {
+        if (!hudRender.hasListeners()) return
+        val event = hudRender.acquire()
+        event.context = context
+        event.tickCounter = tickCounter
+        hudRender.dispatch(event)
+    }
+
+    fun firePlayerTick(player: ClientPlayerEntity) {
+        if (!playerTick.hasListeners()) return
+        val event = playerTick.acquire()
+        event.player = player
+        playerTick.dispatch(event)
+    }
+}
+
+/**
+ * 一種類のイベントとそのリスナー配列を保持するチャンネル。
+ */
+class EventChannel<L : Any, E : InfiniteEvent> internal constructor(
+    name: String,
+    private val listenerType: Class<L>,
+    private val factory: () -> E,
+    private val invoker: (L, E) -> Unit,
+) {
+    @Volatile
+    private var listeners: Array<ConfigurableFeature> = emptyArray()
+
+    // クライアントスレッドで再利用するイベント。配信中の入れ子の発行や別スレッドからの発行では新しく作る
+    private val shared: E = factory()
+    private var sharedInUse = false
+
+    private val section = InfiniteProfiler.section("event:$name")
+
+    fun hasListeners(): Boolean = listeners.isNotEmpty()
+
+    internal fun rebuild(features: List<ConfigurableFeature>) {
+        listeners = features.filter { it.isEnabled() && listenerType.isInstance(it) }.toTypedArray()
+    }
+
+    internal fun acquire(): E {
+        if (!sharedInUse && MinecraftClient.getInstance().isOnThread) {
+            sharedInUse = true
+            shared.reset()
+            return shared
+        }
+        return factory()
+    }
+
+    internal fun dispatch(event: E): Boolean {
+        val current = listeners
+        val token = section.begin()
+        try {
+            for (feature in current) {
+                // 同じ配信の中で先に呼ばれたリスナーによって無効化されている場合がある
+                if (!feature.isEnabled()) continue
+                @Suppress("UNCHECKED_CAST")
+                invoker(feature as L, event)
+                if (event.cancelled) break
+            }
+            return event.cancelled
+        } finally {
+            if (event === shared) sharedInUse = false
+            section.end(token)
+        }
+    }
+}
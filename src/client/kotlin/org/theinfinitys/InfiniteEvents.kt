@@ -0,0 +1,81 @@
+package org.theinfinitys
+
+import net.minecraft.client.gui.DrawContext
+import net.minecraft.client.network.ClientPlayerEntity
+import net.minecraft.client.render.RenderTickCounter
+import net.minecraft.entity.Entity
+import net.minecraft.entity.player.PlayerEntity
+import net.minecraft.network.packet.Packet
+
+/**
+ * Mixin から InfiniteEventBus を通して配信されるイベントの基底クラス。
+ *
+ * イベントオブジェクトはチャンネルごとに再利用されるため、リスナーの外に参照を保持してはいけません。
+ */
+abstract class InfiniteEvent {
+    var cancelled = false
+        private set
+
+    fun cancel() {
+        cancelled = true
+    }
+
+    internal fun reset() {
+        cancelled = false
+    }
+}
+
+/**
+ * クライアントがパケットを送信する直前に発行されます。キャンセルすると送信されません。
+ */
+class PacketSendEvent : InfiniteEvent() {
+    lateinit var packet: Packet<*>
+        internal set
+}
+
+/**
+ * プレイヤーがエンティティを攻撃する直前に発行されます。キャンセルすると攻撃は行われません。
+ */
+class AttackEntityEvent : InfiniteEvent() {
+    lateinit var player: PlayerEntity
+        internal set
+    lateinit var target: Entity
+        internal set
+}
+
+/**
+ * InGameHud の描画の最後に発行されます。
+ */
+class HudRenderEvent : InfiniteEvent() {
+    lateinit var context: DrawContext
+        internal set
+    lateinit var tickCounter: RenderTickCounter
+        internal set
+}
+
+/**
+ * クライアントプレイヤーの tick の最後に発行されます。
+ */
+class PlayerTickEvent : InfiniteEvent() {
+    lateinit var player: ClientPlayerEntity
+        internal set
+}
+
+// --- リスナー ---
+// フィーチャーがこれらのインターフェースを実装すると、有効な間だけ対応するイベントを受け取ります。
+
+fun interface PacketSendListener {
+    fun onPacketSend(event: PacketSendEvent)
+}
+
+fun interface AttackEntityListener {
+    fun onAttackEntity(event: AttackEntityEvent)
+}
+
+fun interface HudRenderListener {
+    fun onHudRender(event: HudRenderEvent)
+}
+
+fun interface PlayerTickListener {
+    fun onPlayerTick(event: PlayerTickEvent)
+}
@@ -0,0 +1,289 @@
+package org.theinfinitys
+
+import it.unimi.dsi.fastutil.Swapper
+import it.unimi.dsi.fastutil.ints.IntComparator
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet
+import net.fabricmc.fabric.api.client.rendering.v1.WorldRenderContext
+import net.fabricmc.fabric.api.client.rendering.v1.WorldRenderEvents
+import net.minecraft.block.BlockState
+import net.minecraft.client.MinecraftClient
+import net.minecraft.client.world.ClientWorld
+import net.minecraft.util.math.Box
+import net.minecraft.util.math.ChunkSectionPos
+import net.minecraft.world.chunk.ChunkSection
+import org.theinfinitys.profiler.InfiniteProfiler
+
+/**
+ * フィーチャーの切り替えや設定の変更で見た目が変わるチャンクセクションを、少しずつ再構築するスケジューラ。
+ *
+ * worldRenderer.reload() はすべてのチャンクのメッシュを破棄してしまい、長い停止のあとにチャンクがばらばらに現れます。
+ * その代わりに影響を受けるセクションを要求として受け取り、同じセクションへの要求は一つにまとめます。
+ * 要求はフレームごとに、視錐台に入っているセクションを先に、その中ではカメラに近い順に処理します。
+ *
+ * 1フレームで処理する数は、直前のフレーム時間が minFps を下回らないように増減させます。
+ * フレームが目標の時間に収まっていれば少しずつ増やし、超えたら半分にします。
+ * 加えて、1フレームで要求の発行に使う時間は目標のフレーム時間の余りに制限します。
+ * セクションに対象のブロックが含まれるかはパレットに対する hasAny で判定するため、ブロック単位の走査は行いません。
+ */
+object SectionRebuildScheduler {
+    const val DEFAULT_MIN_FPS = 60
+    const val MIN_FPS_LOWER = 10
+    const val MIN_FPS_UPPER = 240
+
+    private const val MIN_PER_FRAME = 1
+    private const val MAX_PER_FRAME = 512
+    private const val PER_FRAME_STEP = 8
+    private const val MIN_BUDGET_NANOS = 250_000L
+    private const val MAX_BUDGET_NANOS = 4_000_000L
+
+    // 視錐台は毎フレーム変わるため、カメラのセクションが変わらなくてもこのフレーム数ごとに並べ直す
+    private const val RESORT_INTERVAL = 10
+
+    // 視錐台の外のセクションを後回しにするための優先度のビット
+    private const val OUTSIDE_FRUSTUM = 1L shl 62
+
+    /**
+     * フレームレートの下限。XRay の RebuildMinFps 設定から反映されます。
+     */
+    @Volatile
+    var minFps = DEFAULT_MIN_FPS
+        set(value) {
+            field = value.coerceIn(MIN_FPS_LOWER, MIN_FPS_UPPER)
+        }
+
+    // ChunkSectionPos.asLong でパックしたセクション座標。重複する要求はここでまとまる
+    private val pending = LongOpenHashSet()
+
+    // pending を優先度順に並べたもの。cursor より前は処理済み。処理済みや古い要素は pending にないので読み飛ばす
+    private var ordered = LongArray(0)
+    private var cursor = 0
+    private var needsSort = false
+    private var framesSinceSort = 0
+    private var sortedCameraSection = Long.MIN_VALUE
+
+    private var perFrame = 64
+    private var lastFrameNanos = 0L
+    private var lastFrameDuration = 0L
+    private var world: ClientWorld? = null
+    private var installed = false
+
+    private val drainSection = InfiniteProfiler.section("render:SectionRebuild")
+
+    /**
+     * 待機中の要求の数を返します。
+     */
+    val pendingCount: Int
+        get() = pending.size
+
+    /**
+     * 直前のフレームで処理できたセクション数の上限を返します。
+     */
+    val sectionsPerFrame: Int
+        get() = perFrame
+
+    /**
+     * 直前のフレーム時間をミリ秒で返します。
+     */
+    val lastFrameMillis: Double
+        get() = lastFrameDuration / 1_000_000.0
+
+    /**
+     * 空でないすべての読み込み済みセクションを再構築します。フィーチャーの有効・無効の切り替え時に使用します。
+     */
+    fun requestAllLoaded() {
+        collect(includeNeighbors = false) { section -> !section.isEmpty }
+    }
+
+    /**
+     * 条件に一致するブロックを含むセクションと、その隣接セクションを再構築します。
+     * 隣接ブロックの判定が変わると境界の面の描画も変わるため、隣接セクションも対象にします。
+     */
+    fun requestMatching(predicate: (BlockState) -> Boolean) {
+        collect(includeNeighbors = true) { section -> !section.isEmpty && section.hasAny { predicate(it) } }
+    }
+
+    /**
+     * 指定したブロック座標を含むセクションだけを再構築します。
+     */
+    fun requestSectionAt(
+        x: Int,
+        y: Int,
+        z: Int,
+    ) {
+        install()
+        enqueue(ChunkSectionPos.asLong(x shr 4, y shr 4, z shr 4))
+    }
+
+    /**
+     * 待機中の要求をすべて破棄します。
+     */
+    fun clear() {
+        pending.clear()
+        ordered = LongArray(0)
+        cursor = 0
+        needsSort = false
+    }
+
+    private fun enqueue(packed: Long) {
+        if (pending.add(packed)) needsSort = true
+    }
+
+    private inline fun collect(
+        includeNeighbors: Boolean,
+        matches: (ChunkSection) -> Boolean,
+    ) {
+        val client = MinecraftClient.getInstance()
+        val world = client.world ?: return
+        val player = client.player ?: return
+        install()
+
+        val radius = client.options.clampedViewDistance
+        val centerX = player.chunkPos.x
+        val centerZ = player.chunkPos.z
+        for (chunkX in centerX - radius..centerX + radius) {
+            for (chunkZ in centerZ - radius..centerZ + radius) {
+                if (!world.chunkManager.isChunkLoaded(chunkX, chunkZ)) continue
+                val chunk = world.getChunk(chunkX, chunkZ)
+                val bottom = chunk.bottomSectionCoord
+                for ((index, section) in chunk.sectionArray.withIndex()) {
+                    if (!matches(section)) continue
+                    val sectionY = bottom + index
+                    if (includeNeighbors) {
+                        enqueueWithNeighbors(chunkX, sectionY, chunkZ)
+                    } else {
+                        enqueue(ChunkSectionPos.asLong(chunkX, sectionY, chunkZ))
+                    }
+                }
+            }
+        }
+    }
+
+    private fun enqueueWithNeighbors(
+        x: Int,
+        y: Int,
+        z: Int,
+    ) {
+        enqueue(ChunkSectionPos.asLong(x, y, z))
+        enqueue(ChunkSectionPos.asLong(x - 1, y, z))
+        enqueue(ChunkSectionPos.asLong(x + 1, y, z))
+        enqueue(ChunkSectionPos.asLong(x, y - 1, z))
+        enqueue(ChunkSectionPos.asLong(x, y + 1, z))
+        enqueue(ChunkSectionPos.asLong(x, y, z - 1))
+        enqueue(ChunkSectionPos.asLong(x, y, z + 1))
+    }
+
+    private fun install() {
+        if (installed) return
+        installed = true
+        // 視錐台が確定した後に呼ばれる。ここで出した要求は次のフレームの setupTerrain で拾われる
+        WorldRenderEvents.AFTER_SETUP.register { context -> drainSection.measure { onFrame(context) } }
+    }
+
+    private fun onFrame(context: WorldRenderContext) {
+        val now = System.nanoTime()
+        val frameDuration = if (lastFrameNanos == 0L) 0L else now - lastFrameNanos
+        lastFrameNanos = now
+        lastFrameDuration = frameDuration
+
+        val client = MinecraftClient.getInstance()
+        val currentWorld = client.world
+        if (currentWorld !== world) {
+            world = currentWorld
+            clear()
+        }
+        if (pending.isEmpty || currentWorld == null) return
+
+        val targetNanos = 1_000_000_000L / minFps
+        perFrame =
+            if (frameDuration > targetNanos) {
+                maxOf(MIN_PER_FRAME, perFrame / 2)
+            } else {
+                minOf(MAX_PER_FRAME, perFrame + PER_FRAME_STEP)
+            }
+        val budgetNanos = (targetNanos - frameDuration).coerceIn(MIN_BUDGET_NANOS, MAX_BUDGET_NANOS)
+
+        val camera = context.camera().pos
+        val cameraSection =
+            ChunkSectionPos.asLong(
+                ChunkSectionPos.getSectionCoord(camera.x),
+                ChunkSectionPos.getSectionCoord(camera.y),
+                ChunkSectionPos.getSectionCoord(camera.z),
+            )
+        if (needsSort || cameraSection != sortedCameraSection || ++framesSinceSort >= RESORT_INTERVAL) {
+            sort(context, cameraSection)
+        }
+
+        val worldRenderer = context.worldRenderer()
+        var processed = 0
+        // 最低でも一つは処理して、フレームレートが下限を割り続けても要求が残り続けないようにする
+        while (cursor < ordered.size && processed < perFrame) {
+            val packed = ordered[cursor++]
+            if (!pending.remove(packed)) continue
+            val sectionX = ChunkSectionPos.unpackX(packed)
+            val sectionY = ChunkSectionPos.unpackY(packed)
+            val sectionZ = ChunkSectionPos.unpackZ(packed)
+            // scheduleBlockRenders は範囲を1ブロックずつ広げて周囲26セクションまで再構築するため、セクション単位の API で一つだけ要求する
+            worldRenderer.scheduleChunkRenders(sectionX, sectionY, sectionZ, sectionX, sectionY, sectionZ)
+            processed++
+            if (System.nanoTime() - now > budgetNanos) break
+        }
+        if (pending.isEmpty) clear()
+    }
+
+    // pending を視錐台の内外、カメラからの距離の順に並べ直す
+    private fun sort(
+        context: WorldRenderContext,
+        cameraSection: Long,
+    ) {
+        needsSort = false
+        framesSinceSort = 0
+        sortedCameraSection = cameraSection
+
+        val size = pending.size
+        val keys = LongArray(size)
+        val priorities = LongArray(size)
+        val frustum = context.frustum()
+        val cameraX = ChunkSectionPos.unpackX(cameraSection)
+        val cameraY = ChunkSectionPos.unpackY(cameraSection)
+        val cameraZ = ChunkSectionPos.unpackZ(cameraSection)
+        var index = 0
+        val iterator = pending.iterator()
+        while (iterator.hasNext()) {
+            val packed = iterator.nextLong()
+            val x = ChunkSectionPos.unpackX(packed)
+            val y = ChunkSectionPos.unpackY(packed)
+            val z = ChunkSectionPos.unpackZ(packed)
+            val dx = (x - cameraX).toLong()
+            val dy = (y - cameraY).toLong()
+            val dz = (z - cameraZ).toLong()
+            var priority = dx * dx + dy * dy + dz * dz
+            if (frustum != null) {
+                val minX = ChunkSectionPos.getBlockCoord(x).toDouble()
+                val minY = ChunkSectionPos.getBlockCoord(y).toDouble()
+                val minZ = ChunkSectionPos.getBlockCoord(z).toDouble()
+                if (!frustum.isVisible(Box(minX, minY, minZ, minX + 16.0, minY + 16.0, minZ + 16.0))) {
+                    priority = priority or OUTSIDE_FRUSTUM
+                }
+            }
+            keys[index] = packed
+            priorities[index] = priority
+            index++
+        }
+
+        it.unimi.dsi.fastutil.Arrays.quickSort(
+            0,
+            size,
+            IntComparator { a, b -> priorities[a].compareTo(priorities[b]) },
+            Swapper { a, b ->
+                val key = keys[a]
+                keys[a] = keys[b]
+                keys[b] = key
+                val priority = priorities[a]
+                priorities[a] = priorities[b]
+                priorities[b] = priority
+            },
+        )
+        ordered = keys
+        cursor = 0
+    }
+}
@@ -3,6 +3,7 @@ package org.theinfinitys.features
 import org.theinfinitys.feature
 import org.theinfinitys.features.rendering.AntiOverlay
 import org.theinfinitys.features.rendering.CameraConfig
+import org.theinfinitys.features.rendering.OreESP
 import org.theinfinitys.features.rendering.SuperSight
 import org.theinfinitys.features.rendering.XRay
 
@@ -23,6 +24,11 @@ val rendering =
             XRay(),
             "ブロックを透視して、鉱石、洞窟、その他の隠された構造物を見つけられるようにします。",
         ),
+        feature(
+            "OreESP",
+            OreESP(),
+            "XRayの対象ブロックを壁越しに枠線で表示します。",
+        ),
         feature(
             "CameraConfig",
             CameraConfig(),
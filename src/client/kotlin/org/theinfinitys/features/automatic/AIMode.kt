@@ -2,13 +2,17 @@ package org.theinfinitys.features.automatic
 
 import net.minecraft.client.MinecraftClient
 import org.theinfinitys.ConfigurableFeature
+import org.theinfinitys.HudRenderEvent
+import org.theinfinitys.HudRenderListener
 import org.theinfinitys.InfiniteClient
 import org.theinfinitys.settings.InfiniteSetting
 
 /**
  * クライアントプレイヤーのAI制御を管理するフィーチャー。
  */
-class AIMode : ConfigurableFeature(initialEnabled = false) {
+class AIMode :
+    ConfigurableFeature(initialEnabled = false),
+    HudRenderListener {
     // WoodCutterがこのAIを利用することを示唆
     private val aiFeatureClasses: List<Class<out ConfigurableFeature>> = listOf(WoodCutter::class.java)
     override val available: Boolean = false
@@ -29,6 +33,11 @@ class AIMode : ConfigurableFeature(initialEnabled = false) {
             ),
         )
 
+    private val cancelOnDamaged = booleanHandle("CancelOnDamaged")
+
+    // 依存フィーチャーとダメージの監視のみなので、毎ティック確認する必要はない
+    override val tickInterval: Int = 5
+
     override fun enabled() {
         lastKnownHealth = MinecraftClient.getInstance().player?.health ?: -1.0f
     }
@@ -37,6 +46,15 @@ class AIMode : ConfigurableFeature(initialEnabled = false) {
         lastKnownHealth = -1.0f
     }
 
+    override fun onHudRender(event: HudRenderEvent) {
+        val client = MinecraftClient.getInstance()
+        val text = InfiniteClient.rainbowText("Infinite Client AI Mode")
+        val textWidth = client.textRenderer.getWidth(text)
+        val x = client.window.scaledWidth - textWidth - 2 // 2 pixels padding from right
+        val y = client.window.scaledHeight - client.textRenderer.fontHeight - 2 // 2 pixels padding from bottom
+        event.context.drawTextWithShadow(client.textRenderer, text, x, y, 0xFFFFFFFF.toInt()) // White shadow for readability
+    }
+
     override fun tick() {
         // AIを利用するフィーチャーがない場合、AIModeを無効化
         if (!aiFeatureClasses.any { aiFeature -> InfiniteClient.isFeatureEnabled(aiFeature) }) {
@@ -46,9 +64,7 @@ class AIMode : ConfigurableFeature(initialEnabled = false) {
 
         // ダメージ検知ロジック
         val player = MinecraftClient.getInstance().player
-        val cancelOnDamaged = settings.find { it.name == "CancelOnDamaged" }?.value as? Boolean ?: false
-
-        if (player != null && cancelOnDamaged) {
+        if (player != null && cancelOnDamaged.get()) {
             val currentHealth = player.health
 
             // プレイヤーがダメージを受けたか（Healthが減ったか）を検知
@@ -48,8 +48,16 @@ class WoodCutter : ConfigurableFeature(initialEnabled = false) {
             ),
         )
 
+    private val searchRange = intHandle("Range")
+    private val searchHeight = intHandle("Height")
+    private val collectItems = booleanHandle("CollectItems")
+
     override val depends: List<Class<out ConfigurableFeature>> = listOf(AIMode::class.java)
 
+    // 探索中は広範囲のブロック走査を毎ティック行わないよう間引く。タスク実行中は毎ティック動かす
+    override val tickInterval: Int
+        get() = if (currentState == WoodCutterState.SEARCHING) 10 else 1
+
     // --- 状態管理変数 ---
     private var currentState: WoodCutterState = WoodCutterState.IDLE
     private var targetTree: Tree? = null
@@ -128,9 +136,8 @@ class WoodCutter : ConfigurableFeature(initialEnabled = false) {
                 if (tree == null || tree.logBlocks.isEmpty()) {
                     InfiniteClient.log("Cutting finished or tree disappeared.")
                     // ログをすべて伐採したら、次の状態へ
-                    val collectItems = settings.find { it.name == "CollectItems" }?.value as? Boolean ?: false
                     currentState =
-                        if (collectItems) {
+                        if (collectItems.get()) {
                             WoodCutterState.COLLECTING_ITEMS
                         } else {
                             WoodCutterState.SEARCHING
@@ -224,12 +231,8 @@ class WoodCutter : ConfigurableFeature(initialEnabled = false) {
         val world = client.world ?: return emptyList()
         val player = client.player ?: return emptyList()
 
-        // ... (Range/Height の設定取得ロジックはそのまま) ...
-        val rangeSetting = settings.find { it.name == "Range" } as? InfiniteSetting.IntSetting
-        val heightSetting = settings.find { it.name == "Height" } as? InfiniteSetting.IntSetting
-
-        val range = rangeSetting?.value ?: 32
-        val height = heightSetting?.value ?: 5
+        val range = searchRange.get()
+        val height = searchHeight.get()
 
         val playerPos = player.blockPos
         val foundTrees = mutableListOf<Tree>()
@@ -0,0 +1,213 @@
+package org.theinfinitys.features.fighting
+
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap
+import net.minecraft.client.MinecraftClient
+import net.minecraft.client.network.ClientPlayerEntity
+import net.minecraft.entity.LivingEntity
+import net.minecraft.network.packet.c2s.query.QueryPingC2SPacket
+import net.minecraft.util.Util
+import net.minecraft.world.World
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * 通信の遅延を見込んだ、攻撃対象の位置の予測。
+ *
+ * CombatEntityIndex の範囲内のエンティティだけについて、直近 HISTORY ティックの位置をプリミティブ配列のリングバッファに記録し、
+ * 範囲から外れたエンティティの記録はそのティックのうちに捨てます。
+ * 往復の遅延は、バニラの PingMeasurer と同じく数秒ごとに自分で QueryPingC2SPacket を送り、応答までの時間を平滑化して使います。
+ * プレイヤーリストの ping は約30秒ごとにしか更新されないため、自前の測定が途絶えているときの代わりにだけ使います。
+ * クライアントに見えている位置は片道分古く、攻撃がサーバーに届くまでにさらに片道かかるため、
+ * 直近の速度で往復の遅延の分だけ先の位置を予測し、照準と射程の判定に使います。
+ * クライアントスレッドからのみ使用してください。
+ */
+object AimPredictor {
+    private const val HISTORY = 6
+
+    // 速度を求めるのに使う最大のティック数
+    private const val VELOCITY_SPAN = 3
+
+    // 先読みの上限（ティック）と、テレポートなどで跳ねた速度を切り詰める上限（ブロック/ティック）
+    private const val MAX_LEAD_TICKS = 8.0
+    private const val MAX_SPEED = 1.0
+
+    private const val MILLIS_PER_TICK = 50.0
+
+    // ping を送る間隔と、測定が途絶えたとみなしてプレイヤーリストの ping を使うまでの時間（ミリ秒）
+    private const val PING_INTERVAL_MILLIS = 3_000L
+    private const val PING_STALE_MILLIS = 15_000L
+
+    // エンティティ ID から記録の位置へ
+    private val slots = Int2IntOpenHashMap().apply { defaultReturnValue(-1) }
+    private var ids = IntArray(32)
+    private var heads = IntArray(32)
+    private var counts = IntArray(32)
+    private var seen = IntArray(32)
+    private var xs = DoubleArray(32 * HISTORY)
+    private var ys = DoubleArray(32 * HISTORY)
+    private var zs = DoubleArray(32 * HISTORY)
+    private var size = 0
+
+    private var recordedWorld: World? = null
+    private var recordedAge = -1
+
+    // ネットワークスレッドが書き込む、まだ取り込んでいない最新の往復の時間（ミリ秒）。なければ -1
+    private val pendingPing = AtomicLong(-1L)
+    private var lastPingSentAt = 0L
+    private var lastPingSampleAt = 0L
+
+    // 平滑化した往復の遅延（ミリ秒）
+    var latencyMillis = 0.0
+        private set
+
+    // predict の結果。呼び出しごとに上書きされる
+    var predictedX = 0.0
+        private set
+    var predictedY = 0.0
+        private set
+    var predictedZ = 0.0
+        private set
+
+    /**
+     * このティックの範囲内のエンティティの位置と遅延を記録します。CombatPipeline から毎ティック一度呼ばれます。
+     */
+    fun record(player: ClientPlayerEntity) {
+        val world = player.world
+        val age = player.age
+        if (recordedWorld === world && recordedAge == age) return
+        if (recordedWorld !== world) {
+            // エンティティ ID はワールドごとに振り直される
+            slots.clear()
+            size = 0
+            recordedWorld = world
+        }
+        recordedAge = age
+
+        measureLatency(player)
+
+        CombatEntityIndex.forEachWithin(player, CombatEntityIndex.RADIUS, CombatEntityIndex.ALL) { entity, _ ->
+            var slot = slots.get(entity.id)
+            if (slot < 0) {
+                slot = allocate(entity.id)
+            }
+            val head = (heads[slot] + 1) % HISTORY
+            val index = slot * HISTORY + head
+            xs[index] = entity.x
+            ys[index] = entity.y
+            zs[index] = entity.z
+            heads[slot] = head
+            if (counts[slot] < HISTORY) counts[slot]++
+            seen[slot] = age
+        }
+
+        // 範囲から外れたエンティティの記録を、末尾の記録を移して詰める
+        var i = size - 1
+        while (i >= 0) {
+            if (seen[i] != age) release(i)
+            i--
+        }
+    }
+
+    /**
+     * PingResultS2CPacket を受け取ったときにネットワークスレッドから呼ばれます。startTime は送信時の Util.getMeasuringTimeMs です。
+     */
+    fun onPingResult(startTime: Long) {
+        pendingPing.set(maxOf(Util.getMeasuringTimeMs() - startTime, 0L))
+    }
+
+    private fun measureLatency(player: ClientPlayerEntity) {
+        val networkHandler = MinecraftClient.getInstance().networkHandler ?: return
+        val now = Util.getMeasuringTimeMs()
+        if (now - lastPingSentAt >= PING_INTERVAL_MILLIS) {
+            lastPingSentAt = now
+            networkHandler.sendPacket(QueryPingC2SPacket(now))
+        }
+
+        val ping = pendingPing.getAndSet(-1L)
+        if (ping >= 0) {
+            lastPingSampleAt = now
+            addLatencySample(ping.toDouble())
+        } else if (now - lastPingSampleAt > PING_STALE_MILLIS) {
+            val sample = networkHandler.getPlayerListEntry(player.uuid)?.latency
+            if (sample != null && sample >= 0) addLatencySample(sample.toDouble())
+        }
+    }
+
+    private fun addLatencySample(sample: Double) {
+        latencyMillis = if (latencyMillis == 0.0) sample else latencyMillis * 0.8 + sample * 0.2
+    }
+
+    /**
+     * 往復の遅延の分だけ先の entity の位置を predictedX/Y/Z に書き込みます。記録がなければ現在の位置です。
+     */
+    fun predict(entity: LivingEntity) {
+        predictedX = entity.x
+        predictedY = entity.y
+        predictedZ = entity.z
+        val slot = slots.get(entity.id)
+        if (slot < 0) return
+        val count = counts[slot]
+        if (count < 2) return
+        val lead = (latencyMillis / MILLIS_PER_TICK).coerceAtMost(MAX_LEAD_TICKS)
+        if (lead <= 0.0) return
+
+        val span = minOf(count - 1, VELOCITY_SPAN)
+        val newest = slot * HISTORY + heads[slot]
+        val oldest = slot * HISTORY + (heads[slot] - span + HISTORY) % HISTORY
+        val vx = ((xs[newest] - xs[oldest]) / span).coerceIn(-MAX_SPEED, MAX_SPEED)
+        val vy = ((ys[newest] - ys[oldest]) / span).coerceIn(-MAX_SPEED, MAX_SPEED)
+        val vz = ((zs[newest] - zs[oldest]) / span).coerceIn(-MAX_SPEED, MAX_SPEED)
+        predictedX += vx * lead
+        // 地上の相手の上下の揺れは先読みしない
+        if (!entity.isOnGround) predictedY += vy * lead
+        predictedZ += vz * lead
+    }
+
+    /**
+     * プレイヤーから予測位置までの二乗距離を返します。
+     */
+    fun predictedDistanceSq(
+        player: ClientPlayerEntity,
+        entity: LivingEntity,
+    ): Double {
+        predict(entity)
+        val dx = predictedX - player.x
+        val dy = predictedY - player.y
+        val dz = predictedZ - player.z
+        return dx * dx + dy * dy + dz * dz
+    }
+
+    private fun allocate(id: Int): Int {
+        if (size == ids.size) grow()
+        val slot = size++
+        ids[slot] = id
+        heads[slot] = HISTORY - 1
+        counts[slot] = 0
+        slots.put(id, slot)
+        return slot
+    }
+
+    private fun release(slot: Int) {
+        slots.remove(ids[slot])
+        val last = --size
+        if (slot == last) return
+        ids[slot] = ids[last]
+        heads[slot] = heads[last]
+        counts[slot] = counts[last]
+        seen[slot] = seen[last]
+        System.arraycopy(xs, last * HISTORY, xs, slot * HISTORY, HISTORY)
+        System.arraycopy(ys, last * HISTORY, ys, slot * HISTORY, HISTORY)
+        System.arraycopy(zs, last * HISTORY, zs, slot * HISTORY, HISTORY)
+        slots.put(ids[slot], slot)
+    }
+
+    private fun grow() {
+        val capacity = ids.size * 2
+        ids = ids.copyOf(capacity)
+        heads = heads.copyOf(capacity)
+        counts = counts.copyOf(capacity)
+        seen = seen.copyOf(capacity)
+        xs = xs.copyOf(capacity * HISTORY)
+        ys = ys.copyOf(capacity * HISTORY)
+        zs = zs.copyOf(capacity * HISTORY)
+    }
+}
@@ -0,0 +1,198 @@
+package org.theinfinitys.features.fighting
+
+import net.minecraft.client.network.ClientPlayerEntity
+import net.minecraft.entity.LivingEntity
+import net.minecraft.entity.mob.Monster
+import net.minecraft.entity.player.PlayerEntity
+import net.minecraft.util.math.Box
+import net.minecraft.world.World
+
+/**
+ * 戦闘系のフィーチャーが共有する、プレイヤーの周囲の LivingEntity の一様グリッド。
+ *
+ * 各ティックの最初の問い合わせで、プレイヤーを中心とした一辺 2 * RADIUS の立方体を CELL_SIZE ごとのセルに分け、
+ * 範囲内の LivingEntity を種類（プレイヤー・敵対モブ・その他）とセルの順に並べて作成します。
+ * エンティティの収集にはワールドのセクション単位の検索（getOtherEntities）を使うため、範囲外のエンティティは走査しません。
+ * 同じティックの以降の問い合わせは作成済みのグリッドを使い、距離はプレイヤーからの二乗距離で比較するため平方根を計算しません。
+ * どのフィーチャーも問い合わせなければ、グリッドは作成されません。
+ * クライアントスレッドからのみ使用してください。
+ */
+object CombatEntityIndex {
+    /**
+     * グリッドが扱う範囲の半径（ブロック）。これより大きい半径の問い合わせは RADIUS に切り詰められます。
+     */
+    const val RADIUS = 8.0
+
+    private const val CELL_SIZE = 2.0
+    private const val GRID = (2 * RADIUS / CELL_SIZE).toInt()
+    private const val CELLS = GRID * GRID * GRID
+
+    const val PLAYERS = 1
+    const val HOSTILE = 2
+    const val PASSIVE = 4
+    const val ALL = PLAYERS or HOSTILE or PASSIVE
+
+    private val BUCKETS = intArrayOf(PLAYERS, HOSTILE, PASSIVE)
+
+    // 種類ごと・セルごとに並べたエンティティと、プレイヤーからの二乗距離。作成のたびに使い回す
+    @PublishedApi
+    internal var entities = arrayOfNulls<LivingEntity>(64)
+
+    @PublishedApi
+    internal var distances = DoubleArray(64)
+
+    // (種類の番号 * CELLS + セル) の範囲の開始位置。末尾に総数を置く
+    @PublishedApi
+    internal val cellStart = IntArray(BUCKETS.size * CELLS + 1)
+
+    private val nextSlot = IntArray(BUCKETS.size * CELLS + 1)
+    private var keys = IntArray(64)
+
+    // グリッドの最小の角の座標
+    @PublishedApi
+    internal var minX = 0.0
+
+    @PublishedApi
+    internal var minY = 0.0
+
+    @PublishedApi
+    internal var minZ = 0.0
+
+    private var builtFor: ClientPlayerEntity? = null
+    private var builtWorld: World? = null
+    private var builtAge = -1
+
+    /**
+     * プレイヤーから radius 以内にある、buckets に含まれる種類のエンティティを順に渡します。
+     * 距離の順ではありません。action にはエンティティとプレイヤーからの二乗距離が渡されます。
+     */
+    inline fun forEachWithin(
+        player: ClientPlayerEntity,
+        radius: Double,
+        buckets: Int,
+        action: (entity: LivingEntity, distanceSq: Double) -> Unit,
+    ) {
+        ensureBuilt(player)
+        val r = minOf(radius, RADIUS)
+        val radiusSq = r * r
+        val fromX = cellCoord(player.x - r - minX)
+        val toX = cellCoord(player.x + r - minX)
+        val fromY = cellCoord(player.y - r - minY)
+        val toY = cellCoord(player.y + r - minY)
+        val fromZ = cellCoord(player.z - r - minZ)
+        val toZ = cellCoord(player.z + r - minZ)
+        for (bucket in 0 until 3) {
+            if (buckets and (1 shl bucket) == 0) continue
+            val base = bucket * cellCount()
+            for (y in fromY..toY) {
+                for (z in fromZ..toZ) {
+                    for (x in fromX..toX) {
+                        val cell = base + cellIndex(x, y, z)
+                        for (i in cellStart[cell] until cellStart[cell + 1]) {
+                            val distanceSq = distances[i]
+                            if (distanceSq <= radiusSq) action(entities[i]!!, distanceSq)
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * プレイヤーから radius 以内で、predicate を満たす最も近いエンティティを返します。
+     */
+    inline fun nearest(
+        player: ClientPlayerEntity,
+        radius: Double,
+        buckets: Int,
+        predicate: (LivingEntity) -> Boolean,
+    ): LivingEntity? {
+        var best: LivingEntity? = null
+        var bestDistance = Double.MAX_VALUE
+        forEachWithin(player, radius, buckets) { entity, distanceSq ->
+            if (distanceSq < bestDistance && predicate(entity)) {
+                best = entity
+                bestDistance = distanceSq
+            }
+        }
+        return best
+    }
+
+    @PublishedApi
+    internal fun cellCount(): Int = CELLS
+
+    @PublishedApi
+    internal fun cellCoord(offset: Double): Int = (offset / CELL_SIZE).toInt().coerceIn(0, GRID - 1)
+
+    @PublishedApi
+    internal fun cellIndex(
+        x: Int,
+        y: Int,
+        z: Int,
+    ): Int = (y * GRID + z) * GRID + x
+
+    /**
+     * このティックのグリッドがまだなければ作成します。
+     */
+    @PublishedApi
+    internal fun ensureBuilt(player: ClientPlayerEntity) {
+        val world = player.world
+        if (builtFor === player && builtWorld === world && builtAge == player.age) return
+        builtFor = player
+        builtWorld = world
+        builtAge = player.age
+        build(player, world)
+    }
+
+    private fun build(
+        player: ClientPlayerEntity,
+        world: World,
+    ) {
+        minX = player.x - RADIUS
+        minY = player.y - RADIUS
+        minZ = player.z - RADIUS
+        val radiusSq = RADIUS * RADIUS
+
+        val collected =
+            world.getOtherEntities(player, Box(minX, minY, minZ, player.x + RADIUS, player.y + RADIUS, player.z + RADIUS)) { entity ->
+                entity is LivingEntity && entity.isAlive && entity.squaredDistanceTo(player) <= radiusSq
+            }
+
+        // 種類とセルの番号で数え上げソートする
+        val count = collected.size
+        if (keys.size < count) {
+            val capacity = maxOf(count, keys.size * 2)
+            keys = IntArray(capacity)
+            entities = arrayOfNulls(capacity)
+            distances = DoubleArray(capacity)
+        }
+        cellStart.fill(0)
+        for (i in 0 until count) {
+            val entity = collected[i] as LivingEntity
+            val bucket =
+                when (entity) {
+                    is PlayerEntity -> 0
+                    is Monster -> 1
+                    else -> 2
+                }
+            val key =
+                bucket * CELLS +
+                    cellIndex(cellCoord(entity.x - minX), cellCoord(entity.y - minY), cellCoord(entity.z - minZ))
+            keys[i] = key
+            cellStart[key + 1]++
+        }
+        for (i in 1 until cellStart.size) cellStart[i] += cellStart[i - 1]
+        cellStart.copyInto(nextSlot)
+        for (i in 0 until count) {
+            val entity = collected[i] as LivingEntity
+            val slot = nextSlot[keys[i]]++
+            entities[slot] = entity
+            distances[slot] = entity.squaredDistanceTo(player)
+        }
+        // 前のティックのエンティティへの参照を残さない
+        for (i in count until entities.size) {
+            if (entities[i] == null) break
+            entities[i] = null
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package org.theinfinitys.features.fighting
+
+import net.minecraft.client.MinecraftClient
+import net.minecraft.client.network.ClientPlayerEntity
+import net.minecraft.entity.LivingEntity
+import net.minecraft.util.Hand
+import net.minecraft.util.math.MathHelper
+import org.theinfinitys.ConfigurableFeature
+import org.theinfinitys.FeatureRegistry
+import org.theinfinitys.profiler.InfiniteProfiler
+import org.theinfinitys.profiler.measure
+import kotlin.math.sqrt
+
+/**
+ * KillAura・CounterAttack・ImpactAttack が共有する、ティックごとの戦闘の段。
+ *
+ * プレイヤーのティックの終わりに一度だけ実行され、攻撃のクールダウンの状態を求めてから、有効な CombatPolicy に攻撃案を提出させます。
+ * 攻撃案は優先度の最も高いものが一つだけ選ばれ、向きの変更と攻撃はここでまとめて行います。
+ * 攻撃はクールダウンが溜まりきったとき（getAttackCooldownProgress が 1）にだけ行うため、
+ * どのフィーチャーを組み合わせてもクールダウン一回につき攻撃は一回です。
+ * 候補のエンティティは CombatEntityIndex から得るため、各フィーチャーが別々にワールドを走査することもありません。
+ * 照準と各フィーチャーの射程の判定には、AimPredictor が通信の遅延を見込んで予測した位置を使います。
+ */
+object CombatPipeline {
+    // 攻撃案の優先度。攻撃キーを押している ImpactAttack を最優先し、次に被弾への反撃、最後に KillAura
+    const val PRIORITY_IMPACT = 3
+    const val PRIORITY_COUNTER = 2
+    const val PRIORITY_AURA = 1
+
+    private val section = InfiniteProfiler.section("combat")
+
+    private val context = CombatContext()
+
+    // 戦闘系のフィーチャー。レジストリは起動時に固定されるため、最初のティックで一度だけ集める
+    private var policies: Array<ConfigurableFeature>? = null
+
+    /**
+     * ClientPlayerEntity の tick の終わりから毎ティック呼び出されます。
+     */
+    fun tick(player: ClientPlayerEntity) {
+        val features = policies ?: FeatureRegistry.features.filter { it is CombatPolicy }.toTypedArray().also { policies = it }
+        if (features.none { it.isEnabled() }) return
+        val interactionManager = MinecraftClient.getInstance().interactionManager ?: return
+        if (player.isDead || player.isSpectator) return
+
+        section.measure {
+            context.reset(player)
+            AimPredictor.record(player)
+            for (feature in features) {
+                if (feature.isEnabled()) (feature as CombatPolicy).propose(context)
+            }
+            val policy = context.chosenPolicy ?: return@measure
+            val target = context.chosenTarget!!
+            val attack = context.chosenAttackNow && context.ready
+
+            if (context.chosenRotation == CombatRotation.Track || (attack && context.chosenRotation == CombatRotation.OnAttack)) {
+                faceEntity(player, target)
+            }
+            if (!attack) return@measure
+            interactionManager.attackEntity(player, target)
+            player.swingHand(Hand.MAIN_HAND)
+            policy.onAttackExecuted(target)
+        }
+        context.clear()
+    }
+
+    private fun faceEntity(
+        player: ClientPlayerEntity,
+        target: LivingEntity,
+    ) {
+        // 攻撃がサーバーに届くときの位置を狙う
+        AimPredictor.predict(target)
+        val x = AimPredictor.predictedX - player.x
+        val y = (AimPredictor.predictedY + target.getEyeHeight(target.pose)) - player.eyeY
+        val z = AimPredictor.predictedZ - player.z
+
+        val dist = sqrt(x * x + z * z)
+        player.yaw = (MathHelper.atan2(z, x) * 180.0 / Math.PI).toFloat() - 90.0f
+        player.pitch = (-(MathHelper.atan2(y, dist) * 180.0 / Math.PI)).toFloat()
+    }
+}
+
+/**
+ * CombatPipeline が各 CombatPolicy に渡す、そのティックの戦闘の状態。クライアントスレッドで使い回されます。
+ */
+class CombatContext internal constructor() {
+    lateinit var player: ClientPlayerEntity
+        private set
+
+    // 攻撃のクールダウンの進み具合（0〜1）と、攻撃できる状態か
+    var cooldownProgress = 0f
+        private set
+    val ready: Boolean
+        get() = cooldownProgress >= 1.0f
+
+    internal var chosenPolicy: CombatPolicy? = null
+    internal var chosenTarget: LivingEntity? = null
+    internal var chosenPriority = Int.MIN_VALUE
+    internal var chosenRotation = CombatRotation.None
+    internal var chosenAttackNow = false
+
+    /**
+     * 攻撃案を提出します。優先度が既に提出されたものより高い場合だけ採用されます。
+     * attackNow が false の攻撃案は、向きだけを変え、より低い優先度の攻撃案を抑えます。
+     * PlayerManager のフレンドや NoAttack の保護対象への攻撃案は採用せず、次に優先度の高い攻撃案に譲ります。
+     */
+    fun propose(
+        policy: CombatPolicy,
+        target: LivingEntity,
+        priority: Int,
+        rotation: CombatRotation,
+        attackNow: Boolean,
+    ) {
+        if (priority <= chosenPriority) return
+        if (!TargetFilter.isAllowed(target)) {
+            policy.onProposalRejected(target)
+            return
+        }
+        chosenPolicy = policy
+        chosenTarget = target
+        chosenPriority = priority
+        chosenRotation = rotation
+        chosenAttackNow = attackNow
+    }
+
+    internal fun reset(player: ClientPlayerEntity) {
+        this.player = player
+        cooldownProgress = player.getAttackCooldownProgress(0.5f)
+        clear()
+    }
+
+    // 前のティックのエンティティへの参照を残さない
+    internal fun clear() {
+        chosenPolicy = null
+        chosenTarget = null
+        chosenPriority = Int.MIN_VALUE
+        chosenRotation = CombatRotation.None
+        chosenAttackNow = false
+    }
+}
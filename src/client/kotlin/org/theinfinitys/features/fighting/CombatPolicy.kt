@@ -0,0 +1,38 @@
+package org.theinfinitys.features.fighting
+
+import net.minecraft.entity.LivingEntity
+
+/**
+ * CombatPipeline に攻撃案を提出する戦闘系のフィーチャー。
+ * 有効なフィーチャーだけが、プレイヤーのティックの終わりに一度だけ propose を呼ばれます。
+ */
+interface CombatPolicy {
+    /**
+     * このティックの攻撃案を context.propose で提出します。攻撃案がなければ何もしません。
+     */
+    fun propose(context: CombatContext)
+
+    /**
+     * 提出した攻撃案でパイプラインが実際に攻撃したときに呼ばれます。
+     */
+    fun onAttackExecuted(target: LivingEntity) {}
+
+    /**
+     * 提出した攻撃案のターゲットが TargetFilter で許可されず、採用されなかったときに呼ばれます。
+     */
+    fun onProposalRejected(target: LivingEntity) {}
+}
+
+/**
+ * 攻撃案のターゲットの方向を向くタイミング。
+ */
+enum class CombatRotation {
+    // 向きを変えない
+    None,
+
+    // 攻撃するティックだけ向く
+    OnAttack,
+
+    // 攻撃案が選ばれている間は毎ティック向く
+    Track,
+}
@@ -1,16 +1,40 @@
 package org.theinfinitys.features.fighting
 
-import net.minecraft.client.MinecraftClient
 import net.minecraft.client.network.ClientPlayerEntity
-import net.minecraft.entity.Entity
 import net.minecraft.entity.LivingEntity
-import net.minecraft.util.math.MathHelper
 import org.theinfinitys.ConfigurableFeature
 import org.theinfinitys.settings.InfiniteSetting
-import kotlin.math.sqrt
 
-class CounterAttack : ConfigurableFeature(initialEnabled = false) {
-    override val settings: List<InfiniteSetting<*>> = listOf()
+class CounterAttack :
+    ConfigurableFeature(initialEnabled = false),
+    CombatPolicy {
+    override val settings: List<InfiniteSetting<*>> =
+        listOf(
+            InfiniteSetting.FloatSetting(
+                "Range",
+                "反撃する攻撃者の最大距離を設定します。",
+                4.2f,
+                3.0f,
+                7.0f,
+            ),
+            InfiniteSetting.IntSetting(
+                "Delay",
+                "ダメージを受けてから反撃するまでのティック数を設定します。",
+                0,
+                0,
+                20,
+            ),
+            InfiniteSetting.EnumSetting(
+                "Priority",
+                "攻撃者を推測するときの優先順位の付け方を選択します。",
+                TargetPriority.Threat,
+                TargetPriority.entries.toList(),
+            ),
+        )
+
+    private val range = floatHandle("Range")
+    private val delay = intHandle("Delay")
+    private val priority = enumHandle<TargetPriority>("Priority")
 
     // プレイヤーが最後にダメージを受けたときの無敵時間（>0ならダメージを受けたと判断できる）
     private var lastHurtTime = 0
@@ -25,11 +49,8 @@ class CounterAttack : ConfigurableFeature(initialEnabled = false) {
     private var internalCooldown = 0
     private val cooldownTicks = 20
 
-    // ... (settingsの定義は省略)
-
-    override fun tick() {
-        val client = MinecraftClient.getInstance()
-        val player = client.player ?: return
+    override fun propose(context: CombatContext) {
+        val player = context.player
 
         // 内部クールダウンを減少させる
         if (internalCooldown > 0) {
@@ -43,22 +64,23 @@ class CounterAttack : ConfigurableFeature(initialEnabled = false) {
             val target = findBestAttacker(player)
 
             if (target != null) {
-                // Mixinから受け取っていた情報をここで再取得/再計算
-                val range = ((settings.find { it.name == "Range" } as? InfiniteSetting.FloatSetting)?.value ?: 4.2f)
-                val delay = ((settings.find { it.name == "Delay" } as? InfiniteSetting.IntSetting)?.value ?: 0)
-
                 // 範囲内か確認
-                if (player.distanceTo(target) <= range) {
+                val maxRange = range.get()
+                if (AimPredictor.predictedDistanceSq(player, target) <= maxRange * maxRange) {
                     targetToAttack = target
-                    attackDelayTicks = delay
+                    attackDelayTicks = delay.get()
                 }
             }
         }
         // 最後に現在のhurtTimeを保存
         lastHurtTime = player.hurtTime
 
-        // --- 3. 反撃実行ロジック ---
+        // --- 3. 反撃の攻撃案 ---
         val target = targetToAttack ?: return
+        if (target.isRemoved || !target.isAlive) {
+            targetToAttack = null
+            return
+        }
 
         // 反撃ディレイを減少させる
         if (attackDelayTicks > 0) {
@@ -66,72 +88,29 @@ class CounterAttack : ConfigurableFeature(initialEnabled = false) {
             return
         }
 
-        // ディレイが0以下になったら反撃を実行する
+        // ディレイが0以下になったら、攻撃者の方向を向いて反撃する案を出す。実際の攻撃はクールダウンが溜まったときに CombatPipeline が行う
         if (internalCooldown <= 0) {
-            executeCounterAttack(target)
-            targetToAttack = null
-            internalCooldown = cooldownTicks
+            context.propose(this, target, CombatPipeline.PRIORITY_COUNTER, CombatRotation.OnAttack, true)
         }
     }
 
-    /**
-     * 周囲から最も可能性の高い攻撃者を推測するメソッド
-     */
-    private fun findBestAttacker(player: net.minecraft.client.network.ClientPlayerEntity): LivingEntity? {
-        val client = MinecraftClient.getInstance()
-        val world = client.world ?: return null
-
-        val range = ((settings.find { it.name == "Range" } as? InfiniteSetting.FloatSetting)?.value ?: 4.2f).toDouble()
-
-        // プレイヤーに近いLivingEntityをリストアップ
-        val potentialTargets =
-            world
-                .getOtherEntities(player, player.boundingBox.expand(range)) { entity ->
-                    entity is LivingEntity && entity != player && entity.isAlive
-                }.filterIsInstance<LivingEntity>()
-
-        // ここで、ターゲットの優先順位付けロジックを入れる（例：最も近いエンティティ、または直前に攻撃アニメーションを見せたエンティティなど）
-        // 単純化のため、ここでは「最も近く、生きているLivingEntity」を返す
-        return potentialTargets.minByOrNull { it.distanceTo(player) }
+    override fun onAttackExecuted(target: LivingEntity) {
+        targetToAttack = null
+        internalCooldown = cooldownTicks
     }
 
-    /**
-     * 実際に反撃を実行するメソッド。
-     * Mixinで要求された「別の場所でその方向に向いて攻撃を実行するメソッド」に相当します。
-     */
-    private fun executeCounterAttack(target: LivingEntity) {
-        val client = MinecraftClient.getInstance()
-        val player = client.player
-
-        // 念のための null チェック
-        if (client.world == null || client.interactionManager == null || player == null || player.isDead) {
-            return
-        }
-
-        // 1. 攻撃者の方向を向く
-        faceEntity(player, target)
-
-        // 2. 攻撃を実行する
-        client.interactionManager!!.attackEntity(player, target)
+    override fun onProposalRejected(target: LivingEntity) {
+        // 攻撃できない相手を待ち続けず、次の被弾まで反撃しない
+        if (targetToAttack === target) targetToAttack = null
     }
 
     /**
-     * エンティティの方向を向くメソッド。Mixinから移動。
+     * 周囲から最も可能性の高い攻撃者を推測するメソッド
      */
-    private fun faceEntity(
-        player: ClientPlayerEntity,
-        target: Entity,
-    ) {
-        val x = target.x - player.x
-        val y = (target.y + target.getEyeHeight(target.pose)) - (player.y + player.getEyeHeight(player.pose))
-        val z = target.z - player.z
-
-        val dist = sqrt(x * x + z * z)
-        val yaw = (MathHelper.atan2(z, x) * 180.0 / Math.PI).toFloat() - 90.0F
-        val pitch = (-(MathHelper.atan2(y, dist) * 180.0 / Math.PI)).toFloat()
-
-        player.yaw = yaw
-        player.pitch = pitch
+    private fun findBestAttacker(player: ClientPlayerEntity): LivingEntity? {
+        // 優先順位は TargetScorer に任せる。既定の Threat では、被弾時に腕を振っていたエンティティが優先される
+        // 矢などで被弾したときに近くのフレンドや保護対象を攻撃者と取り違えないよう、TargetFilter で除外する
+        return TargetScorer.best(player, range.get().toDouble(), CombatEntityIndex.ALL, priority.get(), TargetFilter::isAllowed)
     }
 
     override fun disabled() {
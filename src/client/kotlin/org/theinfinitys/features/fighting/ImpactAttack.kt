@@ -2,17 +2,16 @@ package org.theinfinitys.features.fighting
 
 import net.minecraft.client.MinecraftClient
 import net.minecraft.client.network.ClientPlayerEntity
-import net.minecraft.entity.Entity
 import net.minecraft.entity.LivingEntity
 import net.minecraft.util.hit.EntityHitResult
-import net.minecraft.util.math.MathHelper
 import org.theinfinitys.ConfigurableFeature
 import org.theinfinitys.settings.InfiniteSetting
-import kotlin.math.sqrt
 
-class ImpactAttack : ConfigurableFeature(initialEnabled = false) {
+class ImpactAttack :
+    ConfigurableFeature(initialEnabled = false),
+    CombatPolicy {
     // 最初に攻撃されたターゲット
-    private var targetToFollow: Entity? = null
+    private var targetToFollow: LivingEntity? = null
 
     // 攻撃ディレイのタイマー
     private var attackDelayTimer = 0
@@ -34,18 +33,27 @@ class ImpactAttack : ConfigurableFeature(initialEnabled = false) {
                 1,
                 20,
             ),
+            InfiniteSetting.BooleanSetting(
+                "Retarget",
+                "ターゲットを見失ったとき、照準の近くのプレイヤーか敵対モブに攻撃を続けます。フレンドと NoAttack の保護対象は選びません。",
+                false,
+            ),
+            InfiniteSetting.EnumSetting(
+                "Priority",
+                "Retarget で次のターゲットを選ぶ優先順位の付け方を選択します。",
+                TargetPriority.Crosshair,
+                TargetPriority.entries.toList(),
+            ),
         )
 
-    override fun tick() {
-        val client = MinecraftClient.getInstance()
-        val player = client.player ?: return
-        val interactionManager = client.interactionManager ?: return
+    private val range = floatHandle("Range")
+    private val cps = intHandle("CPS")
+    private val retarget = booleanHandle("Retarget")
+    private val priority = enumHandle<TargetPriority>("Priority")
 
-        // 必須チェック
-        if (client.world == null || player.isDead || !isEnabled()) {
-            stopAttack()
-            return
-        }
+    override fun propose(context: CombatContext) {
+        val client = MinecraftClient.getInstance()
+        val player = context.player
 
         // --- 1. ターゲットロックの処理 ---
         // プレイヤーが攻撃キーを押しているかチェック
@@ -62,8 +70,8 @@ class ImpactAttack : ConfigurableFeature(initialEnabled = false) {
                 if (hitResult is EntityHitResult) {
                     val potentialTarget = hitResult.entity
 
-                    // LivingEntityであり、かつ自分自身ではないことを確認
-                    if (potentialTarget is LivingEntity && potentialTarget != player) {
+                    // LivingEntityであり、自分自身でもフレンドや保護対象でもないことを確認
+                    if (potentialTarget is LivingEntity && potentialTarget != player && TargetFilter.isAllowed(potentialTarget)) {
                         // ターゲットロック開始
                         targetToFollow = potentialTarget
                         attackDelayTimer = 0 // タイマーリセット
@@ -76,7 +84,7 @@ class ImpactAttack : ConfigurableFeature(initialEnabled = false) {
 
         // --- 2. ロック継続と終了の条件チェック ---
 
-        val target = targetToFollow ?: return // すでに上でnullチェックされているが、念のため
+        var target = targetToFollow ?: return // すでに上でnullチェックされているが、念のため
 
         // ターゲットが null になる条件:
         // A. 攻撃キーが離された場合（この機能のトリガー）
@@ -89,40 +97,60 @@ class ImpactAttack : ConfigurableFeature(initialEnabled = false) {
             return
         }
 
-        // B. ターゲットの状態チェック
-        if (target.isRemoved || target !is LivingEntity || !target.isAlive) {
-            stopAttack()
-            return
+        // B, C. ターゲットの状態と射程のチェック。Retarget が有効なら照準の近くから次のターゲットを選ぶ
+        val maxRange = range.get()
+        val lost =
+            target.isRemoved ||
+                !target.isAlive ||
+                AimPredictor.predictedDistanceSq(player, target) > maxRange * maxRange
+        if (lost) {
+            val next = if (retarget.get()) findNextTarget(player, maxRange.toDouble()) else null
+            target = next ?: run {
+                stopAttack()
+                return
+            }
+            targetToFollow = target
         }
 
-        // C. 射程外チェック
-        val range = ((settings.find { it.name == "Range" } as? InfiniteSetting.FloatSetting)?.value ?: 4.2f)
-        if (player.distanceTo(target) > range) {
-            stopAttack()
-            return
+        // --- 3. 自動攻撃の攻撃案 ---
+        // ロック中は毎ティック視線をターゲットに合わせ、CPS のタイマーが 0 のときだけ攻撃する。実際の攻撃はクールダウンが溜まったときに CombatPipeline が行う
+        val due = attackDelayTimer == 0
+        if (!due) {
+            attackDelayTimer--
         }
+        context.propose(this, target, CombatPipeline.PRIORITY_IMPACT, CombatRotation.Track, due)
+    }
 
-        // --- 3. 自動攻撃の実行 ---
-
-        val cps = ((settings.find { it.name == "CPS" } as? InfiniteSetting.IntSetting)?.value ?: 10)
-        val delayPerAttack = 20 / cps
+    override fun onAttackExecuted(target: LivingEntity) {
+        attackDelayTimer = 20 / cps.get()
+    }
 
-        // 視線をターゲットに合わせる
-        faceEntity(player, target)
+    override fun onProposalRejected(target: LivingEntity) {
+        // ロック中にフレンドに追加されたなど、攻撃できなくなった相手のロックは解除する
+        stopAttack()
+    }
 
-        // ディレイタイマーを更新
-        if (attackDelayTimer > 0) {
-            attackDelayTimer--
-            return
+    /**
+     * 照準から RETARGET_MAX_ANGLE 以内のプレイヤーと敵対モブのうち、フレンドと保護対象を除いて Priority のスコアが最も小さいエンティティを選びます。
+     */
+    private fun findNextTarget(
+        player: ClientPlayerEntity,
+        maxRange: Double,
+    ): LivingEntity? {
+        val targetPriority = priority.get()
+        var best: LivingEntity? = null
+        var bestScore = Double.MAX_VALUE
+        val rangeSq = maxRange * maxRange
+        CombatEntityIndex.forEachWithin(player, maxRange, CombatEntityIndex.PLAYERS or CombatEntityIndex.HOSTILE) { entity, distanceSq ->
+            if (TargetScorer.angleOf(player, entity, distanceSq) > RETARGET_MAX_ANGLE) return@forEachWithin
+            if (AimPredictor.predictedDistanceSq(player, entity) > rangeSq) return@forEachWithin
+            val score = TargetScorer.score(player, entity, distanceSq, targetPriority)
+            if (score < bestScore && TargetFilter.isAllowed(entity)) {
+                best = entity
+                bestScore = score
+            }
         }
-
-        // 攻撃を実行し、タイマーをリセット
-        // 攻撃を実行する際は、プレイヤーが「振り」のアニメーションに入るようにし、手動攻撃と同じクールダウンロジックをトリガーさせます。
-        interactionManager.attackEntity(player, target)
-        // 攻撃アニメーションのリセット（視覚的な問題回避のため）
-        player.swingHand(player.activeHand)
-
-        attackDelayTimer = delayPerAttack
+        return best
     }
 
     private fun stopAttack() {
@@ -135,25 +163,8 @@ class ImpactAttack : ConfigurableFeature(initialEnabled = false) {
         stopAttack()
     }
 
-    // --- ユーティリティメソッド ---
-
-    /**
-     * エンティティの方向を向くメソッド。
-     * このメソッドは ConfigurableFeature から移動したものとします。
-     */
-    private fun faceEntity(
-        player: ClientPlayerEntity,
-        target: Entity,
-    ) {
-        val x = target.x - player.x
-        val y = (target.y + target.getEyeHeight(target.pose)) - (player.y + player.getEyeHeight(player.pose))
-        val z = target.z - player.z
-
-        val dist = sqrt(x * x + z * z)
-        val yaw = (MathHelper.atan2(z, x) * 180.0 / Math.PI).toFloat() - 90.0F
-        val pitch = (-(MathHelper.atan2(y, dist) * 180.0 / Math.PI)).toFloat()
-
-        player.yaw = yaw
-        player.pitch = pitch
+    companion object {
+        // 次のターゲットとして選ぶ照準からのずれの上限（0〜1。0.25 は約 60 度）
+        private const val RETARGET_MAX_ANGLE = 0.25
     }
 }
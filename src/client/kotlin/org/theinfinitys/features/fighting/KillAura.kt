@@ -1,9 +1,12 @@
 package org.theinfinitys.features.fighting
 
+import net.minecraft.entity.LivingEntity
 import org.theinfinitys.ConfigurableFeature
 import org.theinfinitys.settings.InfiniteSetting
 
-class KillAura : ConfigurableFeature(initialEnabled = false) {
+class KillAura :
+    ConfigurableFeature(initialEnabled = false),
+    CombatPolicy {
     override val settings: List<InfiniteSetting<*>> =
         listOf(
             InfiniteSetting.FloatSetting(
@@ -32,14 +35,20 @@ class KillAura : ConfigurableFeature(initialEnabled = false) {
             ),
             InfiniteSetting.IntSetting(
                 "MaxTargets",
-                "同時に攻撃するエンティティの最大数。(0で無制限)",
+                "順番に攻撃するエンティティの最大数。(0で無制限)",
                 1,
                 0,
                 10,
             ),
+            InfiniteSetting.EnumSetting(
+                "Priority",
+                "攻撃するエンティティの優先順位の付け方を選択します。",
+                TargetPriority.Distance,
+                TargetPriority.entries.toList(),
+            ),
             InfiniteSetting.IntSetting(
                 "AttackFrequency",
-                "攻撃頻度を設定します。(0で自動調整)",
+                "攻撃間の最小ティック数を設定します。(0で武器のクールダウンに合わせて自動調整)",
                 0,
                 0,
                 20,
@@ -50,4 +59,75 @@ class KillAura : ConfigurableFeature(initialEnabled = false) {
                 false,
             ),
         )
+
+    // 毎ティック参照される設定のハンドル
+    val range = floatHandle("Range")
+    val attackDelay = intHandle("AttackDelay")
+    val targetPlayers = booleanHandle("Players")
+    val targetMobs = booleanHandle("Mobs")
+    val maxTargets = intHandle("MaxTargets")
+    val priority = enumHandle<TargetPriority>("Priority")
+    val attackFrequency = intHandle("AttackFrequency")
+    val changeAngle = booleanHandle("ChangeAngle")
+
+    private var attackCooldown = 0
+
+    // 攻撃候補の上位 MaxTargets 件。ティックごとに使い回す
+    private val targets = TargetHeap()
+
+    // 候補を順番に攻撃するための位置
+    private var rotation = 0
+
+    override fun propose(context: CombatContext) {
+        val player = context.player
+        if (attackCooldown > 0) attackCooldown--
+
+        val maxRange = range.get()
+        val buckets =
+            (if (targetPlayers.get()) CombatEntityIndex.PLAYERS else 0) or
+                (if (targetMobs.get()) CombatEntityIndex.HOSTILE or CombatEntityIndex.PASSIVE else 0)
+        if (buckets == 0) return
+
+        // 共有のグリッドから範囲内の候補を受け取り、スコアの小さい MaxTargets 件だけをヒープに残す
+        val rangeSq = maxRange.toDouble() * maxRange
+        val targetPriority = priority.get()
+        targets.reset(maxTargets.get())
+        // 射程の判定は遅延を見込んだ予測位置で行うため、射程の少し外から近づいてくる候補も受け取る
+        CombatEntityIndex.forEachWithin(player, maxRange + PREDICTION_MARGIN, buckets) { entity, distanceSq ->
+            if (AimPredictor.predictedDistanceSq(player, entity) > rangeSq) return@forEachWithin
+            val score = TargetScorer.score(player, entity, distanceSq, targetPriority)
+            if (!targets.accepts(score)) return@forEachWithin
+            if (TargetFilter.isAllowed(entity)) targets.offer(entity, score)
+        }
+        if (targets.size == 0) return
+        targets.sort()
+
+        // クールダウン一回につき攻撃は一回なので、複数の候補は攻撃のたびに順番に切り替える
+        val target = targets[rotation % targets.size]
+        context.propose(
+            this,
+            target,
+            CombatPipeline.PRIORITY_AURA,
+            if (changeAngle.get()) CombatRotation.OnAttack else CombatRotation.None,
+            attackCooldown == 0,
+        )
+    }
+
+    override fun onAttackExecuted(target: LivingEntity) {
+        rotation++
+        // 0 ならクールダウンだけで攻撃間隔が決まる
+        attackCooldown = maxOf(attackDelay.get(), attackFrequency.get())
+    }
+
+    override fun disabled() {
+        super.disabled()
+        attackCooldown = 0
+        rotation = 0
+        targets.reset(0)
+    }
+
+    companion object {
+        // 予測位置が射程に入りうる候補を受け取るための、射程に足す余白（ブロック）
+        private const val PREDICTION_MARGIN = 1.0
+    }
 }
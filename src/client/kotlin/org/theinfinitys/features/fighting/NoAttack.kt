@@ -1,15 +1,54 @@
 package org.theinfinitys.features.fighting
 
+import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet
+import net.minecraft.entity.Entity
+import net.minecraft.entity.EntityType
+import net.minecraft.registry.Registries
+import net.minecraft.util.Identifier
+import org.theinfinitys.AttackEntityEvent
+import org.theinfinitys.AttackEntityListener
 import org.theinfinitys.ConfigurableFeature
 import org.theinfinitys.settings.InfiniteSetting
 
-class NoAttack : ConfigurableFeature(initialEnabled = false) {
-    override val settings: List<InfiniteSetting<*>> =
-        listOf(
-            InfiniteSetting.EntityListSetting(
-                "ProtectedEntities",
-                "攻撃しないエンティティのリスト。",
-                mutableListOf("minecraft:villager", "minecraft:wolf", "minecraft:cat"),
-            ),
+class NoAttack :
+    ConfigurableFeature(initialEnabled = false),
+    AttackEntityListener {
+    val protectedEntities =
+        InfiniteSetting.EntityListSetting(
+            "ProtectedEntities",
+            "攻撃しないエンティティのリスト。",
+            mutableListOf("minecraft:villager", "minecraft:wolf", "minecraft:cat"),
         )
+
+    override val settings: List<InfiniteSetting<*>> = listOf(protectedEntities)
+
+    // ProtectedEntities を解決したエンティティの種類。リストが変わったときだけ作り直し、判定では文字列を作らない
+    private var protectedTypes = ReferenceOpenHashSet<EntityType<*>>()
+
+    override fun start() {
+        protectedEntities.addChangeListener { rebuild() }
+        rebuild()
+    }
+
+    override fun onAttackEntity(event: AttackEntityEvent) {
+        // 保護対象のエンティティ（村人、ペットなど）への攻撃をキャンセル
+        if (isProtected(event.target)) {
+            event.cancel()
+        }
+    }
+
+    /**
+     * エンティティの種類が ProtectedEntities に含まれるかを返します。ハッシュを引くだけで、メモリを確保しません。
+     */
+    fun isProtected(entity: Entity): Boolean = protectedTypes.contains(entity.type)
+
+    private fun rebuild() {
+        val types = ReferenceOpenHashSet<EntityType<*>>()
+        for (id in protectedEntities.value) {
+            val identifier = Identifier.tryParse(id) ?: continue
+            if (!Registries.ENTITY_TYPE.containsId(identifier)) continue
+            types.add(Registries.ENTITY_TYPE.get(identifier))
+        }
+        protectedTypes = types
+    }
 }
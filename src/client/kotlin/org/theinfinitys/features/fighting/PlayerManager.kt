@@ -1,20 +1,153 @@
 package org.theinfinitys.features.fighting
 
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap
+import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet
+import net.minecraft.client.MinecraftClient
+import net.minecraft.entity.player.PlayerEntity
+import org.theinfinitys.AttackEntityEvent
+import org.theinfinitys.AttackEntityListener
 import org.theinfinitys.ConfigurableFeature
+import org.theinfinitys.InfiniteClient
 import org.theinfinitys.settings.InfiniteSetting
+import java.util.UUID
 
-class PlayerManager : ConfigurableFeature(initialEnabled = false) {
-    override val settings: List<InfiniteSetting<*>> =
-        listOf(
-            InfiniteSetting.PlayerListSetting(
-                "Friends",
-                "フレンドとして扱うプレイヤーのリスト。",
-                mutableListOf(),
-            ),
-            InfiniteSetting.PlayerListSetting(
-                "Enemies",
-                "敵として扱うプレイヤーのリスト。",
-                mutableListOf(),
-            ),
+class PlayerManager :
+    ConfigurableFeature(initialEnabled = false),
+    AttackEntityListener {
+    val friends =
+        InfiniteSetting.PlayerListSetting(
+            "Friends",
+            "フレンドとして扱うプレイヤーのリスト。",
+            mutableListOf(),
         )
+
+    val enemies =
+        InfiniteSetting.PlayerListSetting(
+            "Enemies",
+            "敵として扱うプレイヤーのリスト。",
+            mutableListOf(),
+        )
+
+    // "UUID:名前" の形式。名前はタブリストで最後に確認したもので、名前の変更の追跡に使う。
+    // 保存のためだけの設定なので、設定画面には表示しない
+    private val friendIds =
+        InfiniteSetting.StringListSetting(
+            "FriendIds",
+            "フレンドの UUID と最後に確認した名前。タブリストから自動で更新されます。",
+            emptyList(),
+            hidden = true,
+        )
+
+    override val settings: List<InfiniteSetting<*>> = listOf(friends, enemies, friendIds)
+
+    // タブリストとの同期は毎ティック行う必要がない
+    override val tickInterval: Int = 20
+
+    // UUID から最後に確認した名前へ。isFriend はこのキーを引くだけで済ませる
+    private val friendNames = Object2ObjectOpenHashMap<UUID, String>()
+
+    // まだ UUID が分かっていないフレンドの名前
+    private val unresolvedNames = ObjectOpenHashSet<String>()
+
+    // 自身の書き戻しで変更リスナーが再構築しないようにする
+    private var writingBack = false
+
+    override fun start() {
+        friends.addChangeListener { if (!writingBack) rebuild() }
+        friendIds.addChangeListener { if (!writingBack) rebuild() }
+        rebuild()
+    }
+
+    override fun tick() {
+        syncWithPlayerList()
+    }
+
+    override fun onAttackEntity(event: AttackEntityEvent) {
+        // フレンドへの攻撃をキャンセル
+        val target = event.target as? PlayerEntity ?: return
+        if (isFriend(target)) {
+            event.cancel()
+        }
+    }
+
+    /**
+     * プレイヤーがフレンドかどうかを返します。UUID のハッシュを引くだけで、名前の文字列は作りません。
+     * UUID がまだ分かっていないフレンドだけは、プロフィールの名前で判定します。
+     */
+    fun isFriend(player: PlayerEntity): Boolean =
+        friendNames.containsKey(player.uuid) ||
+            (unresolvedNames.isNotEmpty() && unresolvedNames.contains(player.gameProfile.name))
+
+    fun hasFriends(): Boolean = friendNames.isNotEmpty() || unresolvedNames.isNotEmpty()
+
+    /**
+     * 設定から UUID の表と未解決の名前を作り直します。Friends から消された名前の UUID は破棄します。
+     */
+    private fun rebuild() {
+        val names = friends.value
+        friendNames.clear()
+        var dropped = false
+        for (entry in friendIds.value) {
+            val separator = entry.indexOf(':')
+            if (separator < 0) {
+                dropped = true
+                continue
+            }
+            val uuid =
+                try {
+                    UUID.fromString(entry.substring(0, separator))
+                } catch (_: IllegalArgumentException) {
+                    dropped = true
+                    continue
+                }
+            val name = entry.substring(separator + 1)
+            if (name in names) friendNames[uuid] = name else dropped = true
+        }
+        unresolvedNames.clear()
+        unresolvedNames.addAll(names)
+        unresolvedNames.removeAll(friendNames.values)
+        if (dropped) writeBack(namesChanged = false)
+    }
+
+    /**
+     * タブリストのプレイヤーと照合し、未解決の名前に UUID を割り当て、名前が変わったフレンドを新しい名前に置き換えます。
+     */
+    private fun syncWithPlayerList() {
+        if (!hasFriends()) return
+        val handler = MinecraftClient.getInstance().networkHandler ?: return
+        var idsChanged = false
+        var namesChanged = false
+        for (entry in handler.playerList) {
+            val profile = entry.profile
+            val uuid = profile.id ?: continue
+            val name = profile.name
+            val known = friendNames[uuid]
+            if (known == null) {
+                if (unresolvedNames.remove(name)) {
+                    friendNames[uuid] = name
+                    idsChanged = true
+                }
+            } else if (known != name) {
+                val list = friends.value
+                val index = list.indexOf(known)
+                if (index >= 0 && name !in list) list[index] = name else list.remove(known)
+                unresolvedNames.remove(name)
+                friendNames[uuid] = name
+                idsChanged = true
+                namesChanged = true
+                InfiniteClient.info("フレンド $known の名前が $name に変わりました。")
+            }
+        }
+        if (idsChanged) writeBack(namesChanged)
+    }
+
+    private fun writeBack(namesChanged: Boolean) {
+        writingBack = true
+        try {
+            if (namesChanged) friends.notifyChanged()
+            friendIds.value = friendNames.entries.map { "${it.key}:${it.value}" }
+        } finally {
+            writingBack = false
+        }
+    }
 }
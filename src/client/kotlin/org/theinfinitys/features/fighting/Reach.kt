@@ -1,6 +1,7 @@
 package org.theinfinitys.features.fighting
 
 import org.theinfinitys.ConfigurableFeature
+import org.theinfinitys.FeatureFlags
 import org.theinfinitys.settings.InfiniteSetting
 
 class Reach : ConfigurableFeature(initialEnabled = false) {
@@ -14,4 +15,14 @@ class Reach : ConfigurableFeature(initialEnabled = false) {
                 7.0f,
             ),
         )
+
+    val reachDistance = floatHandle("ReachDistance")
+
+    init {
+        mirrorFlags {
+            // 距離を先に書き込み、有効フラグを読んだ側が古い距離を読まないようにする
+            FeatureFlags.reachDistance = reachDistance.get()
+            FeatureFlags.reach = isEnabled()
+        }
+    }
 }
@@ -1,9 +1,17 @@
 package org.theinfinitys.features.fighting
 
+import net.minecraft.client.MinecraftClient
+import net.minecraft.entity.LivingEntity
+import net.minecraft.entity.player.PlayerEntity
+import net.minecraft.network.packet.c2s.play.PlayerMoveC2SPacket
+import org.theinfinitys.AttackEntityEvent
+import org.theinfinitys.AttackEntityListener
 import org.theinfinitys.ConfigurableFeature
 import org.theinfinitys.settings.InfiniteSetting
 
-class SuperAttack : ConfigurableFeature(initialEnabled = false) {
+class SuperAttack :
+    ConfigurableFeature(initialEnabled = false),
+    AttackEntityListener {
     enum class AttackMethod {
         PACKET,
         MINI_JUMP,
@@ -19,4 +27,50 @@ class SuperAttack : ConfigurableFeature(initialEnabled = false) {
                 AttackMethod.entries.toList(),
             ),
         )
+
+    val method: InfiniteSetting.EnumHandle<AttackMethod> = enumHandle("Method")
+
+    override fun onAttackEntity(event: AttackEntityEvent) {
+        val player = event.player
+        if (MinecraftClient.getInstance().player != player) return
+
+        // Conditions from CriticalsHack
+        if (event.target !is LivingEntity) return
+        if (!player.isOnGround) return
+        if (player.isTouchingWater || player.isInLava) return
+
+        when (method.get()) {
+            // Full Jump (equivalent to CriticalsHack's FULL_JUMP)
+            AttackMethod.FULL_JUMP -> player.jump()
+            // Mini Jump (equivalent to CriticalsHack's MINI_JUMP)
+            AttackMethod.MINI_JUMP -> {
+                player.addVelocity(0.0, 0.1, 0.0)
+                player.fallDistance = 0.1
+                player.setOnGround(false)
+            }
+            // Packet method (equivalent to CriticalsHack's PACKET)
+            AttackMethod.PACKET -> {
+                sendFakeY(player, 0.0625, true)
+                sendFakeY(player, 0.0, false)
+                sendFakeY(player, 1.1e-5, false)
+                sendFakeY(player, 0.0, false)
+            }
+        }
+    }
+
+    private fun sendFakeY(
+        player: PlayerEntity,
+        offset: Double,
+        onGround: Boolean,
+    ) {
+        MinecraftClient.getInstance().networkHandler?.sendPacket(
+            PlayerMoveC2SPacket.PositionAndOnGround(
+                player.x,
+                player.y + offset,
+                player.z,
+                onGround,
+                player.isOnGround, // Use player.isOnGround for moving argument
+            ),
+        )
+    }
 }
@@ -0,0 +1,29 @@
+package org.theinfinitys.features.fighting
+
+import net.minecraft.entity.LivingEntity
+import net.minecraft.entity.player.PlayerEntity
+import org.theinfinitys.FeatureRegistry
+
+/**
+ * 戦闘系のフィーチャーが自動で選ぶターゲットから、PlayerManager のフレンドと NoAttack の保護対象を除外します。
+ */
+object TargetFilter {
+    private val noAttack = FeatureRegistry.handle(NoAttack::class.java)
+    private val playerManager = FeatureRegistry.handle(PlayerManager::class.java)
+
+    fun isAllowed(entity: LivingEntity): Boolean =
+        when (entity) {
+            is PlayerEntity -> !isFriendlyPlayer(entity)
+            else -> !isProtectedEntity(entity)
+        }
+
+    private fun isFriendlyPlayer(targetPlayer: PlayerEntity): Boolean {
+        val playerManagerFeature = playerManager.get() ?: return false
+        return playerManagerFeature.isEnabled() && playerManagerFeature.isFriend(targetPlayer)
+    }
+
+    private fun isProtectedEntity(targetEntity: LivingEntity): Boolean {
+        val noAttackFeature = noAttack.get() ?: return false
+        return noAttackFeature.isEnabled() && noAttackFeature.isProtected(targetEntity)
+    }
+}
@@ -0,0 +1,105 @@
+package org.theinfinitys.features.fighting
+
+import net.minecraft.entity.LivingEntity
+
+/**
+ * 評価値の小さい順に上位 limit 件のエンティティを選ぶ、固定容量の最大ヒープ。
+ *
+ * offer は O(log k) で、k 件を超えた候補は根（最も評価値の大きい候補）と比べて入れ替えます。
+ * sort を呼ぶとヒープソートで配列をその場で昇順に並べ替え、以降は get(i) で i 番目に良い候補を参照できます。
+ * 配列は必要になったときにだけ広げて使い回すため、定常状態では候補の選択でメモリを確保しません。
+ */
+class TargetHeap {
+    private var entities = arrayOfNulls<LivingEntity>(16)
+    private var keys = DoubleArray(16)
+    private var limit = 0
+
+    var size = 0
+        private set
+
+    /**
+     * ヒープを空にし、保持する件数の上限を設定します。0 以下なら上限なしです。
+     */
+    fun reset(limit: Int) {
+        entities.fill(null, 0, size)
+        size = 0
+        this.limit = if (limit <= 0) Int.MAX_VALUE else limit
+    }
+
+    /**
+     * 評価値 key の候補がヒープに入るかどうかを返します。除外判定の重い候補を先に振り落とすのに使います。
+     */
+    fun accepts(key: Double): Boolean = size < limit || key < keys[0]
+
+    fun offer(
+        entity: LivingEntity,
+        key: Double,
+    ) {
+        if (size < limit) {
+            if (size == keys.size) grow()
+            entities[size] = entity
+            keys[size] = key
+            siftUp(size++)
+        } else if (key < keys[0]) {
+            entities[0] = entity
+            keys[0] = key
+            siftDown(0, size)
+        }
+    }
+
+    /**
+     * 保持している候補を評価値の昇順に並べ替えます。以降 offer を呼ぶ前に reset してください。
+     */
+    fun sort() {
+        for (end in size - 1 downTo 1) {
+            swap(0, end)
+            siftDown(0, end)
+        }
+    }
+
+    operator fun get(index: Int): LivingEntity = entities[index]!!
+
+    private fun grow() {
+        val capacity = keys.size * 2
+        entities = entities.copyOf(capacity)
+        keys = keys.copyOf(capacity)
+    }
+
+    private fun siftUp(from: Int) {
+        var i = from
+        while (i > 0) {
+            val parent = (i - 1) ushr 1
+            if (keys[parent] >= keys[i]) return
+            swap(i, parent)
+            i = parent
+        }
+    }
+
+    private fun siftDown(
+        from: Int,
+        end: Int,
+    ) {
+        var i = from
+        while (true) {
+            val left = 2 * i + 1
+            if (left >= end) return
+            val right = left + 1
+            val larger = if (right < end && keys[right] > keys[left]) right else left
+            if (keys[i] >= keys[larger]) return
+            swap(i, larger)
+            i = larger
+        }
+    }
+
+    private fun swap(
+        a: Int,
+        b: Int,
+    ) {
+        val entity = entities[a]
+        entities[a] = entities[b]
+        entities[b] = entity
+        val key = keys[a]
+        keys[a] = keys[b]
+        keys[b] = key
+    }
+}
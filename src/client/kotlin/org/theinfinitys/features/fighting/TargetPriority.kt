@@ -0,0 +1,28 @@
+package org.theinfinitys.features.fighting
+
+/**
+ * TargetScorer が使う評価基準の重み。各基準は 0〜1 に正規化され、スコアの小さい候補ほど優先されます。
+ * 脅威（最近自分を攻撃した）とフレンドへの攻撃は、重みの分だけスコアから差し引かれます。
+ */
+enum class TargetPriority(
+    val distance: Double,
+    val health: Double,
+    val armor: Double,
+    val angle: Double,
+    val threat: Double,
+    val attackingFriend: Double,
+) {
+    // 最も近い候補
+    Distance(1.0, 0.0, 0.0, 0.0, 0.0, 0.0),
+
+    // 倒しやすい候補（体力と防具が少ない）
+    LowestHealth(0.2, 1.0, 0.3, 0.0, 0.0, 0.0),
+
+    // 照準に最も近い候補
+    Crosshair(0.2, 0.0, 0.0, 1.0, 0.0, 0.0),
+
+    // 自分やフレンドを攻撃している候補
+    Threat(0.3, 0.0, 0.0, 0.0, 1.0, 0.5),
+
+    Balanced(0.4, 0.3, 0.1, 0.3, 0.6, 0.6),
+}
@@ -0,0 +1,242 @@
+package org.theinfinitys.features.fighting
+
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap
+import net.minecraft.client.network.ClientPlayerEntity
+import net.minecraft.entity.LivingEntity
+import net.minecraft.util.math.MathHelper
+import net.minecraft.world.World
+import org.theinfinitys.FeatureRegistry
+import kotlin.math.sqrt
+
+/**
+ * 戦闘系のフィーチャーが共有する、攻撃対象の優先度の評価。
+ *
+ * 候補ごとの評価基準（距離・体力・防具・照準からの角度・脅威・フレンドへの攻撃）は、そのティックで最初に評価したときに
+ * 0〜1 に正規化してキャッシュし、同じティックの以降の評価では TargetPriority の重みとの積和だけを計算します。
+ * キャッシュとフレンドの位置は使い回す配列に保持するため、評価ではメモリを確保せず、候補数に対して線形です。
+ * クライアントスレッドからのみ使用してください。
+ */
+object TargetScorer {
+    // 脅威として扱う期間（ティック）
+    private const val THREAT_TICKS = 100
+
+    // 被弾時に攻撃者として探す範囲
+    private const val ATTACKER_SEARCH_RADIUS = 6.0
+
+    // フレンドを攻撃しているとみなす距離の二乗と、向きの内積の下限
+    private const val FRIEND_REACH_SQ = 4.0 * 4.0
+    private const val FRIEND_FACING_DOT = 0.7
+
+    private const val FEATURES = 6
+    private const val DISTANCE = 0
+    private const val HEALTH = 1
+    private const val ARMOR = 2
+    private const val ANGLE = 3
+    private const val THREAT = 4
+    private const val ATTACKING_FRIEND = 5
+
+    private val playerManager = FeatureRegistry.handle(PlayerManager::class.java)
+
+    // エンティティ ID からキャッシュの位置へ
+    private val slots = Int2IntOpenHashMap().apply { defaultReturnValue(-1) }
+    private var values = DoubleArray(64 * FEATURES)
+
+    private var cachedFor: ClientPlayerEntity? = null
+    private var cachedWorld: World? = null
+    private var cachedAge = -1
+
+    // このティックの照準の向き
+    private var lookX = 0.0
+    private var lookY = 0.0
+    private var lookZ = 0.0
+
+    // このティックのフレンドの位置
+    private var friendPositions = DoubleArray(8 * 3)
+    private var friendCount = 0
+
+    // 最近自分を攻撃したエンティティの ID と、そのときのプレイヤーの age のリングバッファ
+    private val attackerIds = IntArray(8) { -1 }
+    private val attackerAges = IntArray(8)
+    private var attackerCursor = 0
+    private var attackerWorld: World? = null
+    private var lastHurtTime = 0
+
+    /**
+     * 候補のスコアを返します。小さいほど優先されます。distanceSq はプレイヤーからの二乗距離です。
+     */
+    fun score(
+        player: ClientPlayerEntity,
+        entity: LivingEntity,
+        distanceSq: Double,
+        priority: TargetPriority,
+    ): Double {
+        val base = slotOf(player, entity, distanceSq) * FEATURES
+        val v = values
+        return priority.distance * v[base + DISTANCE] +
+            priority.health * v[base + HEALTH] +
+            priority.armor * v[base + ARMOR] +
+            priority.angle * v[base + ANGLE] -
+            priority.threat * v[base + THREAT] -
+            priority.attackingFriend * v[base + ATTACKING_FRIEND]
+    }
+
+    /**
+     * 照準から候補への向きのずれを 0（正面）〜1（真後ろ）で返します。
+     */
+    fun angleOf(
+        player: ClientPlayerEntity,
+        entity: LivingEntity,
+        distanceSq: Double,
+    ): Double = values[slotOf(player, entity, distanceSq) * FEATURES + ANGLE]
+
+    /**
+     * プレイヤーから radius 以内で predicate を満たす、priority のスコアが最も小さいエンティティを返します。
+     */
+    inline fun best(
+        player: ClientPlayerEntity,
+        radius: Double,
+        buckets: Int,
+        priority: TargetPriority,
+        predicate: (LivingEntity) -> Boolean,
+    ): LivingEntity? {
+        var best: LivingEntity? = null
+        var bestScore = Double.MAX_VALUE
+        CombatEntityIndex.forEachWithin(player, radius, buckets) { entity, distanceSq ->
+            val score = score(player, entity, distanceSq, priority)
+            if (score < bestScore && predicate(entity)) {
+                best = entity
+                bestScore = score
+            }
+        }
+        return best
+    }
+
+    /**
+     * プレイヤーの毎ティックの終わりに呼ばれ、被弾したティックの攻撃者を記録します。
+     */
+    fun onPlayerTick(player: ClientPlayerEntity) {
+        // エンティティ ID はワールドごとに振り直されるため、別のワールドの攻撃者の記録は捨てる
+        if (attackerWorld !== player.world) {
+            attackerWorld = player.world
+            attackerIds.fill(-1)
+        }
+        val hurtTime = player.hurtTime
+        if (hurtTime > lastHurtTime) {
+            // 被弾の攻撃者はクライアントに届かないため、腕を振っている最も近いエンティティを、なければ最も近いエンティティを攻撃者とみなす
+            val attacker =
+                CombatEntityIndex.nearest(player, ATTACKER_SEARCH_RADIUS, CombatEntityIndex.ALL) { it.handSwinging }
+                    ?: CombatEntityIndex.nearest(player, ATTACKER_SEARCH_RADIUS, CombatEntityIndex.ALL) { true }
+            if (attacker != null) {
+                attackerIds[attackerCursor] = attacker.id
+                attackerAges[attackerCursor] = player.age
+                attackerCursor = (attackerCursor + 1) % attackerIds.size
+            }
+        }
+        lastHurtTime = hurtTime
+    }
+
+    private fun slotOf(
+        player: ClientPlayerEntity,
+        entity: LivingEntity,
+        distanceSq: Double,
+    ): Int {
+        ensureTick(player)
+        val cached = slots.get(entity.id)
+        if (cached >= 0) return cached
+
+        val slot = slots.size
+        val base = slot * FEATURES
+        if (values.size < base + FEATURES) values = values.copyOf(values.size * 2)
+        slots.put(entity.id, slot)
+
+        val v = values
+        v[base + DISTANCE] = (sqrt(distanceSq) / CombatEntityIndex.RADIUS).coerceAtMost(1.0)
+        val maxHealth = entity.maxHealth
+        v[base + HEALTH] = if (maxHealth > 0f) ((entity.health + entity.absorptionAmount) / maxHealth).toDouble().coerceIn(0.0, 1.0) else 1.0
+        v[base + ARMOR] = (entity.armor / 20.0).coerceIn(0.0, 1.0)
+
+        val dx = entity.x - player.x
+        val dy = entity.y + entity.height * 0.5 - player.eyeY
+        val dz = entity.z - player.z
+        val length = sqrt(dx * dx + dy * dy + dz * dz)
+        v[base + ANGLE] = if (length > 1.0E-4) (1.0 - (dx * lookX + dy * lookY + dz * lookZ) / length) * 0.5 else 0.0
+
+        v[base + THREAT] = threatOf(entity.id, player.age)
+        v[base + ATTACKING_FRIEND] = if (isAttackingFriend(entity)) 1.0 else 0.0
+        return slot
+    }
+
+    private fun ensureTick(player: ClientPlayerEntity) {
+        val world = player.world
+        if (cachedFor === player && cachedWorld === world && cachedAge == player.age) return
+        cachedFor = player
+        cachedWorld = world
+        cachedAge = player.age
+        slots.clear()
+
+        lookX = lookComponentX(player.yaw, player.pitch)
+        lookY = -MathHelper.sin(player.pitch * MathHelper.RADIANS_PER_DEGREE).toDouble()
+        lookZ = lookComponentZ(player.yaw, player.pitch)
+
+        friendCount = 0
+        val manager = playerManager.get() ?: return
+        if (!manager.isEnabled() || !manager.hasFriends()) return
+        val players = world.players
+        for (i in players.indices) {
+            val other = players[i]
+            if (other === player || !manager.isFriend(other)) continue
+            if (friendPositions.size < (friendCount + 1) * 3) friendPositions = friendPositions.copyOf(friendPositions.size * 2)
+            friendPositions[friendCount * 3] = other.x
+            friendPositions[friendCount * 3 + 1] = other.y
+            friendPositions[friendCount * 3 + 2] = other.z
+            friendCount++
+        }
+    }
+
+    private fun threatOf(
+        entityId: Int,
+        age: Int,
+    ): Double {
+        var threat = 0.0
+        for (i in attackerIds.indices) {
+            if (attackerIds[i] != entityId) continue
+            val elapsed = age - attackerAges[i]
+            if (elapsed in 0 until THREAT_TICKS) threat = maxOf(threat, 1.0 - elapsed.toDouble() / THREAT_TICKS)
+        }
+        return threat
+    }
+
+    /**
+     * 腕を振っていて、近くのフレンドの方を向いている候補をフレンドを攻撃しているとみなします。
+     */
+    private fun isAttackingFriend(entity: LivingEntity): Boolean {
+        if (friendCount == 0 || !entity.handSwinging) return false
+        val facingX = lookComponentX(entity.headYaw, entity.pitch)
+        val facingZ = lookComponentZ(entity.headYaw, entity.pitch)
+        for (i in 0 until friendCount) {
+            val dx = friendPositions[i * 3] - entity.x
+            val dy = friendPositions[i * 3 + 1] - entity.y
+            val dz = friendPositions[i * 3 + 2] - entity.z
+            val distanceSq = dx * dx + dy * dy + dz * dz
+            if (distanceSq > FRIEND_REACH_SQ) continue
+            val horizontal = sqrt(dx * dx + dz * dz)
+            if (horizontal < 1.0E-4) return true
+            val horizontalFacing = sqrt(facingX * facingX + facingZ * facingZ)
+            if (horizontalFacing < 1.0E-4) continue
+            if ((dx * facingX + dz * facingZ) / (horizontal * horizontalFacing) >= FRIEND_FACING_DOT) return true
+        }
+        return false
+    }
+
+    private fun lookComponentX(
+        yaw: Float,
+        pitch: Float,
+    ): Double =
+        (-MathHelper.sin(yaw * MathHelper.RADIANS_PER_DEGREE) * MathHelper.cos(pitch * MathHelper.RADIANS_PER_DEGREE)).toDouble()
+
+    private fun lookComponentZ(
+        yaw: Float,
+        pitch: Float,
+    ): Double =
+        (MathHelper.cos(yaw * MathHelper.RADIANS_PER_DEGREE) * MathHelper.cos(pitch * MathHelper.RADIANS_PER_DEGREE)).toDouble()
+}
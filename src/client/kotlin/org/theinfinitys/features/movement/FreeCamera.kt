@@ -5,6 +5,7 @@ import net.minecraft.client.network.ClientPlayerEntity
 import net.minecraft.entity.MovementType
 import net.minecraft.util.math.Vec3d
 import org.theinfinitys.ConfigurableFeature
+import org.theinfinitys.FeatureFlags
 import org.theinfinitys.settings.InfiniteSetting
 
 /**
@@ -36,6 +37,10 @@ class FreeCamera : ConfigurableFeature(initialEnabled = false) {
     override val settings: List<InfiniteSetting<*>> = listOf(speedSetting)
     override val depends: List<Class<out ConfigurableFeature>> = listOf(Freeze::class.java)
 
+    init {
+        mirrorFlags { FeatureFlags.freeCamera = isEnabled() }
+    }
+
     override fun start() {
         realPlayer = mc.player ?: return
 
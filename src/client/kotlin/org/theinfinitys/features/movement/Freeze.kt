@@ -3,15 +3,19 @@ package org.theinfinitys.features.movement
 import net.minecraft.network.packet.c2s.play.PlayerMoveC2SPacket
 import net.minecraft.client.MinecraftClient
 import org.theinfinitys.ConfigurableFeature
+import org.theinfinitys.PacketSendEvent
+import org.theinfinitys.PacketSendListener
 import org.theinfinitys.settings.InfiniteSetting
 import org.theinfinitys.utils.FakePlayerEntity // 前回の回答で作成したユーティリティクラスを想定
 import java.util.ArrayDeque
 
 /**
  * Freeze Feature (Blink Hack implementation)
- * Mixinを使用してPlayerMoveC2SPacketの送信を停止し、蓄積することで瞬間移動を可能にする。
+ * PacketSendEvent を使用してPlayerMoveC2SPacketの送信を停止し、蓄積することで瞬間移動を可能にする。
  */
-class Freeze : ConfigurableFeature(initialEnabled = false) {
+class Freeze :
+    ConfigurableFeature(initialEnabled = false),
+    PacketSendListener {
 
     // 蓄積された移動パケットを保持するキュー
     val packets = ArrayDeque<PlayerMoveC2SPacket>() // Mixinからアクセスするためvalにしておく
@@ -50,7 +54,7 @@ class Freeze : ConfigurableFeature(initialEnabled = false) {
         // 偽プレイヤーを作成し、本物のプレイヤーの位置を維持
         fakePlayer = FakePlayerEntity()
 
-        // 注: Mixinがすでにパケット送信をフックしているため、ここではイベントリスナーの追加は不要
+        // 注: 有効な間は InfiniteEventBus から PacketSendEvent が配信されるため、ここでのリスナー登録は不要
     }
 
     override fun disabled() {
@@ -109,7 +113,16 @@ class Freeze : ConfigurableFeature(initialEnabled = false) {
     }
 
     /**
-     * Mixinから呼び出され、パケットを処理（キューに追加）する
+     * 移動パケットの送信をキャンセルし、キューに蓄積する
+     */
+    override fun onPacketSend(event: PacketSendEvent) {
+        val packet = event.packet as? PlayerMoveC2SPacket ?: return
+        processMovePacket(packet)
+        event.cancel()
+    }
+
+    /**
+     * パケットを処理（キューに追加）する
      */
     fun processMovePacket(packet: PlayerMoveC2SPacket) {
         val prevPacket = packets.peekLast()
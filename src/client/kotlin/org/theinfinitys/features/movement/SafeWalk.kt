@@ -4,6 +4,7 @@ import net.minecraft.client.MinecraftClient
 import net.minecraft.client.option.KeyBinding
 import net.minecraft.util.math.Box
 import org.theinfinitys.ConfigurableFeature
+import org.theinfinitys.FeatureFlags
 import org.theinfinitys.settings.InfiniteSetting // 基底クラスからインポート
 
 class SafeWalk : ConfigurableFeature(initialEnabled = false) {
@@ -18,6 +19,10 @@ class SafeWalk : ConfigurableFeature(initialEnabled = false) {
 
     override val settings: List<InfiniteSetting<*>> = emptyList() // 設定は追加しない
 
+    init {
+        mirrorFlags { FeatureFlags.safeWalk = isEnabled() }
+    }
+
     // --- 内部状態 ---
     private var sneaking = false // 現在、SafeWalkによってスニーク状態にあるか
 
@@ -15,14 +15,14 @@ class SuperSprint : ConfigurableFeature(initialEnabled = false) {
             ),
         )
 
+    val onlyWhenForward = booleanHandle("OnlyWhenForward")
+    val evenIfHungry = booleanHandle("EvenIfHungry")
+
     override fun tick() {
         val client = MinecraftClient.getInstance()
         val player = client.player ?: return
 
-        val onlyWhenForward = (settings[0] as InfiniteSetting.BooleanSetting).value
-        val evenIfHungry = (settings[1] as InfiniteSetting.BooleanSetting).value
-
-        if (onlyWhenForward) {
+        if (onlyWhenForward.get()) {
             val lookVec = player.rotationVector // Get player's look vector
             val velocityVec = player.velocity // Get player's velocity vector
 
@@ -39,7 +39,7 @@ class SuperSprint : ConfigurableFeature(initialEnabled = false) {
         }
 
         // Handle EvenIfHungry
-        if (!evenIfHungry) { // If EvenIfHungry is false, check hunger
+        if (!evenIfHungry.get()) { // If EvenIfHungry is false, check hunger
             // Player needs at least 7 hunger points (3.5 hunger bars) to sprint
             if (player.hungerManager.foodLevel <= 6) {
                 player.isSprinting = false // Stop sprinting if hunger is too low
@@ -0,0 +1,433 @@
+package org.theinfinitys.features.rendering
+
+import com.mojang.blaze3d.buffers.GpuBuffer
+import com.mojang.blaze3d.pipeline.RenderPipeline
+import com.mojang.blaze3d.platform.DepthTestFunction
+import com.mojang.blaze3d.systems.RenderSystem
+import com.mojang.blaze3d.vertex.VertexFormat
+import it.unimi.dsi.fastutil.ints.IntArrayList
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap
+import it.unimi.dsi.fastutil.longs.LongArrayList
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet
+import net.fabricmc.fabric.api.client.rendering.v1.WorldRenderContext
+import net.fabricmc.fabric.api.client.rendering.v1.WorldRenderEvents
+import net.minecraft.block.Block
+import net.minecraft.client.MinecraftClient
+import net.minecraft.client.gl.RenderPipelines
+import net.minecraft.client.render.BufferBuilder
+import net.minecraft.client.render.VertexConsumer
+import net.minecraft.client.render.VertexFormats
+import net.minecraft.client.util.BufferAllocator
+import net.minecraft.registry.Registries
+import net.minecraft.util.Identifier
+import net.minecraft.util.math.BlockPos
+import net.minecraft.util.math.ChunkPos
+import net.minecraft.util.math.Direction
+import net.minecraft.util.math.MathHelper
+import org.joml.Matrix4f
+import org.joml.Vector3f
+import org.joml.Vector4f
+import org.theinfinitys.ConfigurableFeature
+import org.theinfinitys.FeatureRegistry
+import org.theinfinitys.profiler.InfiniteProfiler
+import org.theinfinitys.profiler.measure
+import org.theinfinitys.settings.InfiniteSetting
+import java.util.IdentityHashMap
+import java.util.OptionalDouble
+import java.util.OptionalInt
+import kotlin.math.abs
+
+/**
+ * XRay の対象ブロックを壁越しに枠線で表示するフィーチャー。
+ *
+ * 対象ブロックの位置は XRayOreIndex から取得し、隣接する同じ種類のブロックを一つの箱にまとめます。
+ * 箱の線はチャンクごとに一つの GPU の頂点バッファに書き込んで保持し、そのチャンクのインデックスが差し替わったときだけ作り直します。
+ * 毎フレームの処理は、一つのレンダーパスの中で範囲内のチャンクごとに一回ずつバッファを描画するだけで、ブロックや箱ごとの処理はありません。
+ * XRayOreIndex は流体を索引しないため、水や溶岩の広がりに枠が付くことはありません。
+ * XRay を有効にしなくても、通常の地形の上に枠線だけを表示できます。
+ */
+class OreESP : ConfigurableFeature(initialEnabled = false) {
+    override val settings: List<InfiniteSetting<*>> =
+        listOf(
+            InfiniteSetting.IntSetting(
+                "Range",
+                "枠線を表示する範囲の半径（ブロック）。チャンク単位で判定します。",
+                96,
+                16,
+                256,
+            ),
+            InfiniteSetting.BooleanSetting(
+                "MergeClusters",
+                "隣接する同じ種類のブロックを一つの枠にまとめます。",
+                true,
+            ),
+        )
+
+    private val range = intHandle("Range")
+    private val mergeClusters = booleanHandle("MergeClusters")
+    private val xray = FeatureRegistry.handle(XRay::class.java)
+
+    /**
+     * 一つのチャンクの枠の頂点バッファ。頂点の座標はチャンクの原点 (originX, 0, originZ) からの相対座標。
+     * 枠がないチャンクでは vertices が null になる。
+     */
+    private class ChunkMesh(
+        val source: XRayOreIndex.ChunkIndex,
+        val merged: Boolean,
+        val vertices: GpuBuffer?,
+        val indexCount: Int,
+    ) {
+        fun close() {
+            vertices?.close()
+        }
+    }
+
+    // ChunkPos.toLong をキーとする頂点バッファのキャッシュ。描画スレッドからのみ参照する
+    private val cache = Long2ObjectOpenHashMap<ChunkMesh>()
+    private val colorCache = IdentityHashMap<Block, Int>()
+    private val renderSection = InfiniteProfiler.section("render:OreESP")
+    private var registered = false
+
+    // 作り直しに使う頂点の書き込み先。アップロードした後は次の作り直しで再利用する
+    private var allocator: BufferAllocator? = null
+
+    override fun start() {
+        if (registered) return
+        registered = true
+        WorldRenderEvents.LAST.register { context -> if (isEnabled()) renderSection.measure { render(context) } }
+    }
+
+    override fun enabled() {
+        // XRayOreIndex は XRay か OreESP が有効な間だけ維持される
+        xray.get()?.updateOreIndex()
+    }
+
+    override fun disabled() {
+        xray.get()?.updateOreIndex()
+        clearCache()
+    }
+
+    override fun stop() {
+        clearCache()
+    }
+
+    private fun clearCache() {
+        // GPU のバッファは描画スレッドで解放する
+        MinecraftClient.getInstance().execute {
+            for (mesh in cache.values) mesh.close()
+            cache.clear()
+            allocator?.close()
+            allocator = null
+        }
+    }
+
+    private fun render(context: WorldRenderContext) {
+        val matrices = context.matrixStack() ?: return
+        val camera = context.camera().pos
+        val radius = range.get()
+        val merge = mergeClusters.get()
+        val centerX = MathHelper.floor(camera.x) shr 4
+        val centerZ = MathHelper.floor(camera.z) shr 4
+        val chunkRadius = (radius shr 4) + 1
+        val radiusSq = radius.toDouble() * radius
+
+        // 範囲から外れたチャンクのバッファを解放する
+        val iterator = cache.long2ObjectEntrySet().fastIterator()
+        while (iterator.hasNext()) {
+            val entry = iterator.next()
+            val key = entry.longKey
+            if (abs(ChunkPos.getPackedX(key) - centerX) > chunkRadius + EVICT_MARGIN || abs(ChunkPos.getPackedZ(key) - centerZ) > chunkRadius + EVICT_MARGIN) {
+                entry.value.close()
+                iterator.remove()
+            }
+        }
+
+        visible.clear()
+        var rebuilds = 0
+        var maxIndexCount = 0
+        for (chunkX in centerX - chunkRadius..centerX + chunkRadius) {
+            for (chunkZ in centerZ - chunkRadius..centerZ + chunkRadius) {
+                val key = ChunkPos.toLong(chunkX, chunkZ)
+                val index = XRayOreIndex.chunkIndex(chunkX, chunkZ)
+                if (index == null) {
+                    cache.remove(key)?.close()
+                    continue
+                }
+                var mesh = cache.get(key)
+                if (mesh == null || mesh.source !== index || mesh.merged != merge) {
+                    // 一フレームで作り直すチャンクの数を制限する。残りは古い枠のまま次のフレームに回す
+                    if (rebuilds >= REBUILDS_PER_FRAME) {
+                        if (mesh == null) continue
+                    } else {
+                        mesh?.close()
+                        mesh = buildMesh(chunkX, chunkZ, index, merge)
+                        cache.put(key, mesh)
+                        rebuilds++
+                    }
+                }
+                if (mesh.vertices == null) continue
+                // チャンクの水平方向の最も近い点が範囲外なら描画しない
+                val nearestX = camera.x.coerceIn((chunkX shl 4).toDouble(), ((chunkX shl 4) + 16).toDouble()) - camera.x
+                val nearestZ = camera.z.coerceIn((chunkZ shl 4).toDouble(), ((chunkZ shl 4) + 16).toDouble()) - camera.z
+                if (nearestX * nearestX + nearestZ * nearestZ > radiusSq) continue
+                visible.add(key)
+                maxIndexCount = maxOf(maxIndexCount, mesh.indexCount)
+            }
+        }
+        if (visible.isEmpty) return
+        // 即時描画と同じく、行列スタックの変換のあとにモデルビュー行列をかける
+        val modelView = Matrix4f(RenderSystem.getModelViewMatrix()).mul(matrices.peek().positionMatrix)
+        draw(modelView, camera.x, camera.y, camera.z, maxIndexCount)
+    }
+
+    // このフレームに描画するチャンク。フレームごとに使い回す
+    private val visible = LongArrayList()
+
+    private fun draw(
+        modelView: Matrix4f,
+        cameraX: Double,
+        cameraY: Double,
+        cameraZ: Double,
+        maxIndexCount: Int,
+    ) {
+        val framebuffer = MinecraftClient.getInstance().framebuffer
+        val shapeIndex = RenderSystem.getSequentialBuffer(VertexFormat.DrawMode.LINES)
+        val indexBuffer = shapeIndex.getIndexBuffer(maxIndexCount)
+        val textureMatrix = RenderSystem.getTextureMatrix()
+        RenderSystem
+            .getDevice()
+            .createCommandEncoder()
+            .createRenderPass(
+                { "Infinite OreESP" },
+                framebuffer.colorAttachmentView!!,
+                OptionalInt.empty(),
+                framebuffer.depthAttachmentView,
+                OptionalDouble.empty(),
+            ).use { pass ->
+                pass.setPipeline(ESP_PIPELINE)
+                RenderSystem.bindDefaultUniforms(pass)
+                pass.setIndexBuffer(indexBuffer, shapeIndex.indexType)
+                for (i in 0 until visible.size) {
+                    val key = visible.getLong(i)
+                    val mesh = cache.get(key) ?: continue
+                    val vertices = mesh.vertices ?: continue
+                    // 頂点はチャンクの原点からの相対座標なので、カメラからの原点のずれをモデルのオフセットとして渡す
+                    val transforms =
+                        RenderSystem.getDynamicUniforms().write(
+                            modelView,
+                            Vector4f(1f, 1f, 1f, 1f),
+                            Vector3f(
+                                ((ChunkPos.getPackedX(key) shl 4) - cameraX).toFloat(),
+                                (-cameraY).toFloat(),
+                                ((ChunkPos.getPackedZ(key) shl 4) - cameraZ).toFloat(),
+                            ),
+                            textureMatrix,
+                            LINE_WIDTH,
+                        )
+                    pass.setUniform("DynamicTransforms", transforms)
+                    pass.setVertexBuffer(0, vertices)
+                    pass.drawIndexed(0, 0, mesh.indexCount, 1)
+                }
+            }
+    }
+
+    // チャンクの枠の線を頂点に書き出し、GPU のバッファにアップロードする
+    private fun buildMesh(
+        chunkX: Int,
+        chunkZ: Int,
+        index: XRayOreIndex.ChunkIndex,
+        merge: Boolean,
+    ): ChunkMesh {
+        val (boxes, colors) = buildBoxes(index, merge)
+        if (colors.isEmpty()) return ChunkMesh(index, merge, null, 0)
+        val originX = chunkX shl 4
+        val originZ = chunkZ shl 4
+        val allocator = allocator ?: BufferAllocator(INITIAL_ALLOCATOR_BYTES).also { allocator = it }
+        val builder = BufferBuilder(allocator, VertexFormat.DrawMode.LINES, VertexFormats.POSITION_COLOR_NORMAL)
+        for (i in colors.indices) {
+            val base = i * 6
+            emitBox(
+                builder,
+                (boxes[base] - originX).toFloat(),
+                boxes[base + 1].toFloat(),
+                (boxes[base + 2] - originZ).toFloat(),
+                (boxes[base + 3] - originX).toFloat(),
+                boxes[base + 4].toFloat(),
+                (boxes[base + 5] - originZ).toFloat(),
+                colors[i],
+            )
+        }
+        val built = builder.endNullable() ?: return ChunkMesh(index, merge, null, 0)
+        built.use {
+            val vertices =
+                RenderSystem.getDevice().createBuffer(
+                    { "Infinite OreESP chunk $chunkX,$chunkZ" },
+                    GpuBuffer.USAGE_VERTEX,
+                    it.buffer,
+                )
+            return ChunkMesh(index, merge, vertices, it.drawParameters.indexCount())
+        }
+    }
+
+    private fun buildBoxes(
+        index: XRayOreIndex.ChunkIndex,
+        merge: Boolean,
+    ): Pair<IntArray, IntArray> {
+        val positions = index.positions
+        val boxes = IntArrayList()
+        val colors = IntArrayList()
+        if (!merge) {
+            val iterator = positions.long2IntEntrySet().fastIterator()
+            while (iterator.hasNext()) {
+                val entry = iterator.next()
+                val packed = entry.longKey
+                val x = BlockPos.unpackLongX(packed)
+                val y = BlockPos.unpackLongY(packed)
+                val z = BlockPos.unpackLongZ(packed)
+                addBox(boxes, x, y, z, x + 1, y + 1, z + 1)
+                colors.add(colorOf(Block.getStateFromRawId(entry.intValue).block))
+            }
+            return boxes.toIntArray() to colors.toIntArray()
+        }
+
+        // 6方向に隣接する同じ種類のブロックをたどり、まとまりごとに外接する箱を作る
+        val remaining = LongOpenHashSet(positions.size)
+        val keys = positions.long2IntEntrySet().fastIterator()
+        while (keys.hasNext()) remaining.add(keys.next().longKey)
+        val stack = LongArrayList()
+        val iterator = positions.long2IntEntrySet().fastIterator()
+        while (iterator.hasNext()) {
+            val entry = iterator.next()
+            val start = entry.longKey
+            if (!remaining.remove(start)) continue
+            val block = Block.getStateFromRawId(entry.intValue).block
+            var minX = Int.MAX_VALUE
+            var minY = Int.MAX_VALUE
+            var minZ = Int.MAX_VALUE
+            var maxX = Int.MIN_VALUE
+            var maxY = Int.MIN_VALUE
+            var maxZ = Int.MIN_VALUE
+            stack.add(start)
+            while (!stack.isEmpty) {
+                val packed = stack.removeLong(stack.size - 1)
+                val x = BlockPos.unpackLongX(packed)
+                val y = BlockPos.unpackLongY(packed)
+                val z = BlockPos.unpackLongZ(packed)
+                minX = minOf(minX, x)
+                minY = minOf(minY, y)
+                minZ = minOf(minZ, z)
+                maxX = maxOf(maxX, x)
+                maxY = maxOf(maxY, y)
+                maxZ = maxOf(maxZ, z)
+                for (direction in DIRECTIONS) {
+                    val neighbor = BlockPos.offset(packed, direction)
+                    if (!remaining.contains(neighbor)) continue
+                    if (Block.getStateFromRawId(positions.get(neighbor)).block != block) continue
+                    remaining.remove(neighbor)
+                    stack.add(neighbor)
+                }
+            }
+            addBox(boxes, minX, minY, minZ, maxX + 1, maxY + 1, maxZ + 1)
+            colors.add(colorOf(block))
+        }
+        return boxes.toIntArray() to colors.toIntArray()
+    }
+
+    private fun addBox(
+        boxes: IntArrayList,
+        minX: Int,
+        minY: Int,
+        minZ: Int,
+        maxX: Int,
+        maxY: Int,
+        maxZ: Int,
+    ) {
+        boxes.add(minX)
+        boxes.add(minY)
+        boxes.add(minZ)
+        boxes.add(maxX)
+        boxes.add(maxY)
+        boxes.add(maxZ)
+    }
+
+    private fun emitBox(
+        consumer: VertexConsumer,
+        minX: Float,
+        minY: Float,
+        minZ: Float,
+        maxX: Float,
+        maxY: Float,
+        maxZ: Float,
+        color: Int,
+    ) {
+        // X方向の4辺
+        line(consumer, minX, minY, minZ, maxX, minY, minZ, color, 1f, 0f, 0f)
+        line(consumer, minX, maxY, minZ, maxX, maxY, minZ, color, 1f, 0f, 0f)
+        line(consumer, minX, minY, maxZ, maxX, minY, maxZ, color, 1f, 0f, 0f)
+        line(consumer, minX, maxY, maxZ, maxX, maxY, maxZ, color, 1f, 0f, 0f)
+        // Y方向の4辺
+        line(consumer, minX, minY, minZ, minX, maxY, minZ, color, 0f, 1f, 0f)
+        line(consumer, maxX, minY, minZ, maxX, maxY, minZ, color, 0f, 1f, 0f)
+        line(consumer, minX, minY, maxZ, minX, maxY, maxZ, color, 0f, 1f, 0f)
+        line(consumer, maxX, minY, maxZ, maxX, maxY, maxZ, color, 0f, 1f, 0f)
+        // Z方向の4辺
+        line(consumer, minX, minY, minZ, minX, minY, maxZ, color, 0f, 0f, 1f)
+        line(consumer, maxX, minY, minZ, maxX, minY, maxZ, color, 0f, 0f, 1f)
+        line(consumer, minX, maxY, minZ, minX, maxY, maxZ, color, 0f, 0f, 1f)
+        line(consumer, maxX, maxY, minZ, maxX, maxY, maxZ, color, 0f, 0f, 1f)
+    }
+
+    private fun line(
+        consumer: VertexConsumer,
+        x1: Float,
+        y1: Float,
+        z1: Float,
+        x2: Float,
+        y2: Float,
+        z2: Float,
+        color: Int,
+        normalX: Float,
+        normalY: Float,
+        normalZ: Float,
+    ) {
+        consumer.vertex(x1, y1, z1).color(color).normal(normalX, normalY, normalZ)
+        consumer.vertex(x2, y2, z2).color(color).normal(normalX, normalY, normalZ)
+    }
+
+    // ブロックIDから色を決める。鉱石は見分けやすい色にし、それ以外は白
+    private fun colorOf(block: Block): Int =
+        colorCache.getOrPut(block) {
+            val path = Registries.BLOCK.getId(block).path
+            when {
+                "diamond" in path -> 0xFF33EBFF.toInt()
+                "emerald" in path -> 0xFF17DD62.toInt()
+                "ancient_debris" in path || "netherite" in path -> 0xFF8B5A3C.toInt()
+                "gold" in path -> 0xFFFFD700.toInt()
+                "iron" in path -> 0xFFD8AF93.toInt()
+                "copper" in path -> 0xFFE0773A.toInt()
+                "redstone" in path -> 0xFFFF2020.toInt()
+                "lapis" in path -> 0xFF2050FF.toInt()
+                "coal" in path -> 0xFF404040.toInt()
+                "quartz" in path -> 0xFFF0EDE5.toInt()
+                else -> 0xFFFFFFFF.toInt()
+            }
+        }
+
+    companion object {
+        private const val REBUILDS_PER_FRAME = 16
+
+        // 範囲の外でもこのチャンク数まではバッファを残し、境界を行き来するたびに作り直さないようにする
+        private const val EVICT_MARGIN = 2
+        private const val INITIAL_ALLOCATOR_BYTES = 256 * 1024
+        private const val LINE_WIDTH = 2.0f
+        private val DIRECTIONS = Direction.values()
+
+        // 壁越しに見えるよう、深度テストを行わない線のパイプライン
+        private val ESP_PIPELINE: RenderPipeline =
+            RenderPipeline
+                .builder(RenderPipelines.RENDERTYPE_LINES_SNIPPET)
+                .withLocation(Identifier.of("infinite", "pipeline/ore_esp_lines"))
+                .withDepthTestFunction(DepthTestFunction.NO_DEPTH_TEST)
+                .build()
+    }
+}
@@ -1,6 +1,7 @@
 package org.theinfinitys.features.rendering
 
 import org.theinfinitys.ConfigurableFeature
+import org.theinfinitys.FeatureFlags
 import org.theinfinitys.settings.InfiniteSetting
 
 class SuperSight : ConfigurableFeature(initialEnabled = false) {
@@ -14,4 +15,14 @@ class SuperSight : ConfigurableFeature(initialEnabled = false) {
             InfiniteSetting.BooleanSetting("FullBright", "ゲーム内の明るさを最大にします。", true),
             InfiniteSetting.BooleanSetting("AntiBlind", "盲目や暗闇のエフェクトを無効にします。", true),
         )
+
+    val fullBright = booleanHandle("FullBright")
+    val antiBlind = booleanHandle("AntiBlind")
+
+    init {
+        mirrorFlags {
+            FeatureFlags.fullBright = isEnabled() && fullBright.get()
+            FeatureFlags.antiBlind = isEnabled() && antiBlind.get()
+        }
+    }
 }
@@ -1,20 +1,44 @@
 package org.theinfinitys.features.rendering
 
-import net.minecraft.block.Block
+import com.mojang.brigadier.CommandDispatcher
+import com.mojang.brigadier.arguments.IntegerArgumentType
+import com.mojang.brigadier.arguments.StringArgumentType
+import net.fabricmc.fabric.api.client.command.v2.ClientCommandManager
+import net.fabricmc.fabric.api.client.command.v2.FabricClientCommandSource
+import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientWorldEvents
 import net.minecraft.block.BlockState
 import net.minecraft.client.MinecraftClient
+import net.minecraft.client.world.ClientWorld
+import net.minecraft.command.CommandSource
 import net.minecraft.registry.Registries
+import net.minecraft.util.DyeColor
+import net.minecraft.util.Identifier
 import net.minecraft.util.math.BlockPos
 import net.minecraft.util.math.Direction
 import org.theinfinitys.ConfigurableFeature
+import org.theinfinitys.FeatureFlags
+import org.theinfinitys.FeatureRegistry
+import org.theinfinitys.FeatureTransaction
+import org.theinfinitys.HudRenderEvent
+import org.theinfinitys.HudRenderListener
+import org.theinfinitys.InfiniteClient
+import org.theinfinitys.SectionRebuildScheduler
+import org.theinfinitys.profiler.InfiniteProfiler
+import org.theinfinitys.profiler.measure
 import org.theinfinitys.settings.InfiniteSetting
+import java.util.EnumMap
+import kotlin.math.sqrt
 
 enum class XRayMode {
     Normal,
     OnlyExposed,
+    Translucent,
+    CaveConnected,
 }
 
-class XRay : ConfigurableFeature(initialEnabled = false) {
+class XRay :
+    ConfigurableFeature(initialEnabled = false),
+    HudRenderListener {
     override val settings: List<InfiniteSetting<*>> =
         listOf(
             InfiniteSetting.EnumSetting(
@@ -122,129 +146,493 @@ class XRay : ConfigurableFeature(initialEnabled = false) {
                     "minecraft:water",
                 ),
             ),
+            InfiniteSetting.BooleanSetting(
+                "DimensionProfiles",
+                "ネザーとエンドでは専用のブロックリストを使います。無効の場合はすべてのディメンションで上のリストを使います。",
+                true,
+            ),
+            InfiniteSetting.BlockListSetting(
+                "NetherThroughBlockList",
+                "ネザーで常に透過するブロックのリスト",
+                (listOf("minecraft:chest", "minecraft:trapped_chest", "minecraft:ender_chest", "minecraft:barrel") + SHULKER_BOXES)
+                    .toMutableList(),
+            ),
+            InfiniteSetting.BlockListSetting(
+                "NetherExposedBlockList",
+                "ネザーで露出している際にXRayで表示するブロックのリスト",
+                mutableListOf(
+                    "minecraft:ancient_debris",
+                    "minecraft:bone_block",
+                    "minecraft:crying_obsidian",
+                    "minecraft:gilded_blackstone",
+                    "minecraft:lodestone",
+                    "minecraft:nether_gold_ore",
+                    "minecraft:nether_portal",
+                    "minecraft:nether_quartz_ore",
+                    "minecraft:respawn_anchor",
+                    "minecraft:spawner",
+                ),
+            ),
+            InfiniteSetting.BlockListSetting(
+                "EndThroughBlockList",
+                "エンドで常に透過するブロックのリスト",
+                (listOf("minecraft:chest", "minecraft:ender_chest") + SHULKER_BOXES).toMutableList(),
+            ),
+            InfiniteSetting.BlockListSetting(
+                "EndExposedBlockList",
+                "エンドで露出している際にXRayで表示するブロックのリスト",
+                mutableListOf(
+                    "minecraft:brewing_stand",
+                    "minecraft:dragon_egg",
+                    "minecraft:end_gateway",
+                    "minecraft:end_portal",
+                    "minecraft:end_portal_frame",
+                    "minecraft:end_rod",
+                ),
+            ),
+            InfiniteSetting.FloatSetting(
+                "Opacity",
+                "Translucentモードでの他のブロックの不透明度",
+                0.25f,
+                0.0f,
+                1.0f,
+            ),
+            InfiniteSetting.IntSetting(
+                "TranslucentRadius",
+                "Translucentモードで他のブロックを半透明で描画する範囲の半径（ブロック）。これより遠くは描画しません。",
+                48,
+                16,
+                256,
+            ),
+            InfiniteSetting.IntSetting(
+                "CaveRadius",
+                "CaveConnectedモードで洞窟のつながりを調べる範囲の半径（ブロック）。これより遠くはOnlyExposedと同じ判定になります。",
+                96,
+                32,
+                256,
+            ),
+            InfiniteSetting.BooleanSetting(
+                "OreCounter",
+                "周囲にある対象ブロックの数をHUDに表示します。",
+                true,
+            ),
+            InfiniteSetting.IntSetting(
+                "CounterRadius",
+                "OreCounterとコマンドで数える範囲の半径（ブロック）",
+                32,
+                8,
+                128,
+            ),
+            InfiniteSetting.IntSetting(
+                "RebuildMinFps",
+                "切り替え後にセクションを少しずつ再構築するときに保つフレームレートの下限。/infinite rebuild floor でも変更できます。",
+                SectionRebuildScheduler.DEFAULT_MIN_FPS,
+                SectionRebuildScheduler.MIN_FPS_LOWER,
+                SectionRebuildScheduler.MIN_FPS_UPPER,
+            ),
         )
 
-    // ... (enabled/disabled関数は変更なし)
+    init {
+        mirrorFlags { FeatureFlags.xray = isEnabled() }
+    }
+
+    override fun start() {
+        SectionRebuildScheduler.minFps = rebuildMinFps.get()
+        XRayOreIndex.install()
+        XRayTranslucency.install()
+        XRayCaveGraph.install()
+        ClientWorldEvents.AFTER_CLIENT_WORLD_CHANGE.register { _, world -> applyProfile(profileFor(world), rebuild = false) }
+        // ディメンションの移動時にコンパイルしないように、すべてのプロファイルの判定表を先に作成しておく
+        for (profile in XRayProfile.entries) tableFor(profile)
+        // ワーカーが参照する前に、クライアントの初期化中にスナップショットを作成しておく
+        publishSnapshot(tableFor(activeProfile))
+    }
+
+    override fun stop() {
+        XRayOreIndex.clear()
+        XRayCaveGraph.clear()
+        counterLines = emptyList()
+    }
+
     override fun enabled() {
-        // Trigger world re-render when XRay is enabled
-        MinecraftClient.getInstance().worldRenderer.reload()
+        // Trigger re-render of the loaded sections when XRay is enabled
+        FeatureTransaction.schedule(REBUILD_SECTIONS)
+        updateOreIndex()
+        updateCaveGraph()
     }
 
     override fun disabled() {
-        // Trigger world re-render when XRay is disabled
-        MinecraftClient.getInstance().worldRenderer.reload()
+        // Trigger re-render of the loaded sections when XRay is disabled
+        FeatureTransaction.schedule(REBUILD_SECTIONS)
+        updateOreIndex()
+        XRayCaveGraph.stop()
+        counterLines = emptyList()
+    }
+
+    companion object {
+        private const val MAX_COUNTER_LINES = 8
+        private const val MAX_COMMAND_RADIUS = 256
+
+        private val SHULKER_BOXES = listOf("minecraft:shulker_box") + DyeColor.entries.map { "minecraft:${it.asString()}_shulker_box" }
+
+        // 同じトランザクション内の切り替えでは、セクションの再構築の要求は一回だけ行う
+        val REBUILD_SECTIONS =
+            FeatureTransaction.SideEffect("XRay.rebuildSections") {
+                SectionRebuildScheduler.requestAllLoaded()
+            }
     }
 
-    // 設定リストを取得する補助関数
-    private fun getThroughBlockList(): Set<String> = (settings[1] as InfiniteSetting.BlockListSetting).value.toSet()
+    // チャンクビルダーのスレッドから呼ばれる shouldDrawSide の計測区間
+    private val shouldDrawSideSection = InfiniteProfiler.section("hook:XRay.shouldDrawSide")
 
-    private fun getExposedBlockList(): Set<String> = (settings[2] as InfiniteSetting.BlockListSetting).value.toSet()
+    private val method = enumHandle<XRayMode>("Method")
+    private val oreEsp = FeatureRegistry.handle(OreESP::class.java)
+    private val dimensionProfiles = booleanHandle("DimensionProfiles")
+    private val opacity = floatHandle("Opacity")
+    private val translucentRadius = intHandle("TranslucentRadius")
+    private val caveRadius = intHandle("CaveRadius")
+    private val oreCounter = booleanHandle("OreCounter")
+    private val counterRadius = intHandle("CounterRadius")
+    private val rebuildMinFps = intHandle("RebuildMinFps")
+
+    // HUDに表示する行。描画のたびに数え直さず、tick() で更新する
+    private var counterLines: List<String> = emptyList()
+
+    override val tickInterval: Int = 20
+
+    // チャンクビルダーのスレッドに公開する設定のスナップショット。設定が変わるたびにクライアントスレッドで差し替える
+    @Volatile
+    private var snapshot: XRaySnapshot? = null
+
+    // プロファイルごとのコンパイル済みの判定表。ブロックリストが変わったプロファイルだけを作り直す。クライアントスレッドからのみ参照する
+    private val compiledTables = EnumMap<XRayProfile, XRayBlockTable>(XRayProfile::class.java)
+    private var activeProfile = XRayProfile.Overworld
+
+    init {
+        for (profile in XRayProfile.entries) {
+            throughList(profile).addChangeListener { onBlockListChanged(profile) }
+            exposedList(profile).addChangeListener { onBlockListChanged(profile) }
+        }
+        requireSetting<InfiniteSetting.BooleanSetting>("DimensionProfiles").addChangeListener {
+            applyProfile(profileFor(MinecraftClient.getInstance().world), rebuild = true)
+        }
+        requireSetting<InfiniteSetting.EnumSetting<*>>("Method").addChangeListener {
+            // モードによって対象ブロックの面の判定が変わる
+            val previousMode = snapshot?.mode
+            val current = publishSnapshot(snapshot?.table ?: tableFor(activeProfile))
+            val table = current.table
+            updateCaveGraph()
+            if (isEnabled()) {
+                if (previousMode == XRayMode.Translucent || current.mode == XRayMode.Translucent) {
+                    // 対象外のブロックの描画も変わるため、すべてのセクションを作り直す
+                    SectionRebuildScheduler.requestAllLoaded()
+                } else {
+                    SectionRebuildScheduler.requestMatching { state -> table.isTarget(state) }
+                }
+            }
+        }
+        // 不透明度と範囲は頂点とレイヤーに焼き込まれるため、Translucent モードでは作り直す
+        val translucencyListener: (Any) -> Unit = {
+            val snapshot = snapshot?.table?.let { publishSnapshot(it) }
+            if (isEnabled() && snapshot?.mode == XRayMode.Translucent) {
+                SectionRebuildScheduler.requestAllLoaded()
+            }
+        }
+        requireSetting<InfiniteSetting.FloatSetting>("Opacity").addChangeListener(translucencyListener)
+        requireSetting<InfiniteSetting.IntSetting>("TranslucentRadius").addChangeListener(translucencyListener)
+        requireSetting<InfiniteSetting.IntSetting>("CaveRadius").addChangeListener { updateCaveGraph() }
+        // 設定ファイルから読み込んだ値もスケジューラに反映する
+        requireSetting<InfiniteSetting.IntSetting>("RebuildMinFps").addChangeListener { SectionRebuildScheduler.minFps = it }
+    }
+
+    private fun throughList(profile: XRayProfile) = requireSetting<InfiniteSetting.BlockListSetting>(profile.throughSetting)
+
+    private fun exposedList(profile: XRayProfile) = requireSetting<InfiniteSetting.BlockListSetting>(profile.exposedSetting)
+
+    private fun tableFor(profile: XRayProfile): XRayBlockTable =
+        compiledTables.getOrPut(profile) {
+            XRayBlockTable.compile(throughList(profile).value.toList(), exposedList(profile).value.toList())
+        }
+
+    private fun profileFor(world: ClientWorld?): XRayProfile =
+        if (dimensionProfiles.get()) XRayProfile.of(world?.registryKey) else XRayProfile.Overworld
+
+    // 使用するプロファイルを切り替える。ワールドの切り替え時はチャンクがすべて読み込み直されるため、再構築は要求しない
+    private fun applyProfile(
+        profile: XRayProfile,
+        rebuild: Boolean,
+    ) {
+        if (profile == activeProfile) return
+        activeProfile = profile
+        val previous = snapshot?.table
+        val current = publishSnapshot(tableFor(profile)).table
+        if (isOreIndexNeeded()) XRayOreIndex.start(current)
+        if (!isEnabled()) return
+        updateCaveGraph()
+        if (rebuild && previous != null) requestChangedSections(previous, current)
+    }
+
+    private fun publishSnapshot(table: XRayBlockTable): XRaySnapshot =
+        XRaySnapshot(
+            (snapshot?.version ?: 0) + 1,
+            table,
+            effectiveMode(),
+            (opacity.get().coerceIn(0.0f, 1.0f) * 255).toInt(),
+            translucentRadius.get(),
+        ).also { snapshot = it }
+
+    // Translucent モードのフックが使えない環境では Normal モードにする
+    private fun effectiveMode(): XRayMode {
+        val mode = method.get()
+        return if (mode == XRayMode.Translucent && !XRayTranslucency.isSupported()) XRayMode.Normal else mode
+    }
+
+    private fun onBlockListChanged(profile: XRayProfile) {
+        compiledTables.remove(profile)
+        val table = tableFor(profile)
+        // 使用中でないプロファイルは、次にそのディメンションに入ったときに使われる
+        if (profile != activeProfile) return
+        val previous = snapshot?.table
+        val current = publishSnapshot(table).table
+        if (isOreIndexNeeded()) XRayOreIndex.start(current)
+        if (previous == null || !isEnabled()) return
+        updateCaveGraph()
+        requestChangedSections(previous, current)
+    }
+
+    // 判定が変わったブロックを含むセクションだけを再構築する
+    private fun requestChangedSections(
+        previous: XRayBlockTable,
+        current: XRayBlockTable,
+    ) {
+        SectionRebuildScheduler.requestMatching { state ->
+            previous.isThrough(state) != current.isThrough(state) || previous.isExposed(state) != current.isExposed(state)
+        }
+    }
+
+    private fun isOreIndexNeeded(): Boolean = isEnabled() || oreEsp.isEnabled()
 
     /**
-     * ブロックがXRayで描画されるべきかどうか（全体として）を判断します。
-     * この関数は、ブロックがリストに明示的に含まれているかのみをチェックします。
+     * XRay か OreESP が有効な間だけ XRayOreIndex を維持します。OreESP の有効・無効の切り替えからも呼ばれます。
      */
-    fun isVisible(
-        block: Block,
-        pos: BlockPos,
-    ): Boolean {
-        val blockId = Registries.BLOCK.getId(block).toString()
-        val throughList = getThroughBlockList()
-        val exposedList = getExposedBlockList()
+    fun updateOreIndex() {
+        if (isOreIndexNeeded()) XRayOreIndex.start(blockTable()) else XRayOreIndex.stop()
+    }
 
-        // 描画リストに明示的に含まれているブロックのみを対象とする
-        if (throughList.contains(blockId)) {
-            return true
+    // CaveConnected モードの間だけ洞窟のグラフを作成する
+    private fun updateCaveGraph() {
+        val current = snapshot
+        if (isEnabled() && current != null && current.mode == XRayMode.CaveConnected) {
+            XRayCaveGraph.start(current.table, caveRadius.get())
+        } else {
+            XRayCaveGraph.stop()
         }
-        if (exposedList.contains(blockId)) {
-            return true
+    }
+
+    /**
+     * 現在のスナップショットを返します。まだ作成されていない場合は、クライアントスレッドでのみ作成します。
+     * ワーカーのスレッドで null が返った場合は XRay の判定を行わず、バニラの処理に任せてください。
+     */
+    fun snapshot(): XRaySnapshot? {
+        snapshot?.let { return it }
+        // レジストリの初期化後に作成する必要があるため、初回の参照時に作成する。設定のリストはクライアントスレッドでしか読まない
+        if (!MinecraftClient.getInstance().isOnThread) return null
+        return publishSnapshot(tableFor(activeProfile))
+    }
+
+    private fun blockTable(): XRayBlockTable = snapshot()?.table ?: XRayBlockTable.EMPTY
+
+    override fun tick() {
+        val player = MinecraftClient.getInstance().player
+        if (!oreCounter.get() || player == null) {
+            counterLines = emptyList()
+            return
         }
+        val radius = counterRadius.get()
+        counterLines =
+            XRayOreIndex.countWithin(player.blockPos, radius).take(MAX_COUNTER_LINES).map { (block, count) ->
+                "${block.name.string}: $count"
+            }
+    }
 
-        // どのリストにも含まれていない場合、描画対象外とする
-        return false
+    override fun onHudRender(event: HudRenderEvent) {
+        val lines = counterLines
+        if (lines.isEmpty()) return
+        val client = MinecraftClient.getInstance()
+        val textRenderer = client.textRenderer
+        var y = 2
+        for (line in lines) {
+            val x = client.window.scaledWidth - textRenderer.getWidth(line) - 2 // 右端から2ピクセル
+            event.context.drawTextWithShadow(textRenderer, line, x, y, 0xFFFFFFFF.toInt())
+            y += textRenderer.fontHeight + 1
+        }
     }
 
-    // ★ 補助関数: ブロックIDがXRayのターゲット（ThroughまたはExposed）であるかを判定
-    private fun isXRayTarget(blockId: String): Boolean {
-        val throughList = getThroughBlockList()
-        val exposedList = getExposedBlockList()
-        return throughList.contains(blockId) || exposedList.contains(blockId)
+    override fun registerCommands(dispatcher: CommandDispatcher<FabricClientCommandSource>) {
+        dispatcher.register(
+            ClientCommandManager.literal("infinite").then(
+                ClientCommandManager
+                    .literal("xray")
+                    // /infinite xray count [radius]
+                    .then(
+                        ClientCommandManager
+                            .literal("count")
+                            .executes { _ -> showCounts(counterRadius.get()) }
+                            .then(
+                                ClientCommandManager
+                                    .argument("radius", IntegerArgumentType.integer(1, MAX_COMMAND_RADIUS))
+                                    .executes { context -> showCounts(IntegerArgumentType.getInteger(context, "radius")) },
+                            ),
+                    )
+                    // /infinite xray nearest [block]
+                    .then(
+                        ClientCommandManager
+                            .literal("nearest")
+                            .executes { _ -> showNearest(null) }
+                            .then(
+                                ClientCommandManager
+                                    .argument("block", StringArgumentType.greedyString())
+                                    .suggests { _, builder ->
+                                        CommandSource.suggestMatching(
+                                            throughList(activeProfile).value + exposedList(activeProfile).value,
+                                            builder,
+                                        )
+                                    }.executes { context -> showNearest(StringArgumentType.getString(context, "block")) },
+                            ),
+                    ),
+            ),
+        )
     }
 
-    // ★ 補助関数: ブロックIDがNormalモードのターゲットであるかを判定
-    private fun isNormalModeTarget(blockId: String): Boolean = isXRayTarget(blockId)
+    private fun showCounts(radius: Int): Int {
+        val player = MinecraftClient.getInstance().player ?: return 0
+        if (!isEnabled()) {
+            InfiniteClient.warn("XRayが有効になっていません。")
+            return 0
+        }
+        val counts = XRayOreIndex.countWithin(player.blockPos, radius)
+        if (counts.isEmpty()) {
+            InfiniteClient.info("半径${radius}ブロック以内に対象ブロックはありません。")
+            return 1
+        }
+        InfiniteClient.info("半径${radius}ブロック以内の対象ブロック:")
+        for ((block, count) in counts) {
+            InfiniteClient.log("  ${block.name.string}: $count")
+        }
+        return 1
+    }
 
-    // ★ 補助関数: ブロックIDがOnlyExposedモードのターゲットであるかを判定
-    private fun isOnlyExposedModeTarget(blockId: String): Boolean {
-        val throughList = getThroughBlockList()
-        val exposedList = getExposedBlockList()
-        return throughList.contains(blockId) || exposedList.contains(blockId)
+    private fun showNearest(blockId: String?): Int {
+        val player = MinecraftClient.getInstance().player ?: return 0
+        if (!isEnabled()) {
+            InfiniteClient.warn("XRayが有効になっていません。")
+            return 0
+        }
+        val block =
+            if (blockId == null) {
+                null
+            } else {
+                val identifier = Identifier.tryParse(blockId.trim())
+                if (identifier == null || !Registries.BLOCK.containsId(identifier)) {
+                    InfiniteClient.error("ブロック '$blockId' が見つかりません。")
+                    return 0
+                }
+                Registries.BLOCK.get(identifier)
+            }
+        val origin = player.blockPos
+        val nearest = XRayOreIndex.nearest(origin, MAX_COMMAND_RADIUS, block)
+        if (nearest == null) {
+            InfiniteClient.info("半径${MAX_COMMAND_RADIUS}ブロック以内に見つかりませんでした。")
+            return 1
+        }
+        val name = player.world.getBlockState(nearest).block.name.string
+        val distance = sqrt(nearest.getSquaredDistance(origin))
+        InfiniteClient.info(
+            "$name: ${nearest.x}, ${nearest.y}, ${nearest.z}（${"%.1f".format(distance)}ブロック）",
+        )
+        return 1
     }
 
+    /**
+     * ブロックがXRayで描画されるべきかどうか（全体として）を判断します。
+     * この関数は、ブロックがリストに明示的に含まれているかのみをチェックします。
+     */
+    fun isVisible(state: BlockState): Boolean = snapshot()?.table?.isTarget(state) ?: false
+
     /**
      * 描画されるブロックの特定の面を描画するかどうかを判断します。
      * Normalモード: ブロック自体がExposed/Throughに含まれ、かつ隣接ブロックがExposed/Throughに含まれていなければ描画。
-     * OnlyExposedモード: Throughブロックは常に描画。Exposedブロックは隣接ブロックが空気なら描画。
-     * AntiAntiXRayモード: OnlyExposedに加えて、Replacedブロックも隣接ブロックが空気なら描画。
+     * OnlyExposedモード: Throughブロックは常に描画。Exposedブロックは隣接ブロックが空気か流体なら描画。
+     * CaveConnectedモード: OnlyExposedと同じ判定に加え、プレイヤーのいる洞窟とつながっていないブロックは decideWithoutNeighbor で除外済み。
      * * ★ 追加の最適化: 隣接ブロックが同じXRay対象カテゴリに属する場合、描画をスキップする（カリング）。
+     * 判定は XRaySnapshot の参照のみで、呼び出しごとの割り当てやロックは発生しません。
      */
     fun shouldDrawSide(
         blockState: BlockState,
         blockPos: BlockPos,
         side: Direction,
         neighborState: BlockState,
-    ): Boolean? {
-        if (!isEnabled()) return null
-
-        val block = blockState.block
-        val blockId = Registries.BLOCK.getId(block).toString()
-        val method = getSetting("Method")?.value as? XRayMode ?: return null
-
-        val throughList = getThroughBlockList()
-        val exposedList = getExposedBlockList()
+    ): Boolean? = shouldDrawSideSection.measure { decideSide(blockState, neighborState) }
 
-        val neighborBlockId = Registries.BLOCK.getId(neighborState.block).toString()
-        val isNeighborAir = neighborBlockId == "minecraft:air"
-
-        // 1. まず、現在のブロックがXRay対象リストに載っているかチェック (装飾ブロックの除外)
-        if (!isVisible(block, blockPos)) {
-            return false // リストにないブロックは描画しない (falseを返すことで、Mixinで !shouldDrawSide のロジックが適用されるのを避ける)
+    /**
+     * 隣接ブロックを参照せずに面の描画を決められる場合はその結果を返します。null の場合は shouldDrawSide で判定してください。
+     * OnlyExposedモードで露出マスクが「露出していない」を示すブロックは、隣接ブロックを取得せずにすべての面を省略できます。
+     * CaveConnectedモードでは、プレイヤーのいる洞窟とつながった空間に接していないブロックのすべての面を省略します。
+     */
+    fun decideWithoutNeighbor(
+        blockState: BlockState,
+        blockPos: BlockPos,
+    ): Boolean? {
+        if (!FeatureFlags.xray) return null
+        val snapshot = snapshot() ?: return null
+        val table = snapshot.table
+        if (!table.isTarget(blockState)) return if (isGhost(snapshot)) null else false
+        if (table.isThrough(blockState)) return null
+        return when (snapshot.mode) {
+            XRayMode.OnlyExposed -> if (isMaskedHidden(table, blockState, blockPos)) false else null
+            // グラフの範囲外ではOnlyExposedと同じ判定にする
+            XRayMode.CaveConnected ->
+                when (XRayCaveGraph.isConnected(blockPos)) {
+                    false -> false
+                    true -> null
+                    null -> if (isMaskedHidden(table, blockState, blockPos)) false else null
+                }
+            else -> null
         }
+    }
 
-        // 2. メインの描画ロジックとカリング
+    // 露出マスクはインデックスに載るブロックの分しか作られないため、流体などは隣接ブロックで判定する
+    private fun isMaskedHidden(
+        table: XRayBlockTable,
+        blockState: BlockState,
+        blockPos: BlockPos,
+    ): Boolean = table.isIndexed(blockState) && XRayOreIndex.isExposed(blockPos) == false
 
-        return when (method) {
-            XRayMode.Normal -> {
-                val isCurrentTarget = isNormalModeTarget(blockId)
-                val isNeighborTarget = isNormalModeTarget(neighborBlockId)
+    private fun decideSide(
+        blockState: BlockState,
+        neighborState: BlockState,
+    ): Boolean? {
+        if (!FeatureFlags.xray) return null
 
-                if (isCurrentTarget) {
-                    !isNeighborTarget
-                } else {
-                    false
-                }
-            }
+        // 一回の判定の中では同じスナップショットを使う
+        val snapshot = snapshot() ?: return null
+        val table = snapshot.table
 
-            XRayMode.OnlyExposed -> {
-                val isCurrentTarget = isOnlyExposedModeTarget(blockId)
-                val isNeighborTarget = isOnlyExposedModeTarget(neighborBlockId)
+        // 1. まず、現在のブロックがXRay対象リストに載っているかチェック (装飾ブロックの除外)
+        // リストにないブロックは描画しない (falseを返すことで、Mixinで !shouldDrawSide のロジックが適用されるのを避ける)
+        // Translucentモードのカメラに近いセクションでは、半透明のレイヤーに振り分けたうえでバニラの判定に任せる
+        if (!table.isTarget(blockState)) return if (isGhost(snapshot)) null else false
 
-                if (!isCurrentTarget) return false // 再チェック
+        // 2. 同種カテゴリのカリング: 隣接ブロックが同じXRay対象（Through/Exposed）なら描画しない
+        if (table.isTarget(neighborState)) return false
 
-                // ★ 同種カテゴリのカリング: 隣接ブロックが同じXRay対象（Through/Exposed）なら描画しない
-                if (isNeighborTarget) {
-                    return false
-                }
+        return when (snapshot.mode) {
+            XRayMode.Normal, XRayMode.Translucent -> true
 
-                // 露出ロジック（カリングチェックを通過した場合に適用）
-                if (throughList.contains(blockId)) {
-                    true // Throughは常に描画 **<-- 修正済み**
-                } else if (exposedList.contains(blockId)) {
-                    isNeighborAir // Exposedは隣接が空気なら描画 **<-- 修正済み**
-                } else {
-                    false
-                }
-            }
+            // 露出ロジック: Throughは常に描画、Exposedは空気か流体に接している面だけを描画
+            XRayMode.OnlyExposed, XRayMode.CaveConnected -> table.isThrough(blockState) || XRayOreIndex.isOpen(neighborState)
         }
     }
+
+    private fun isGhost(snapshot: XRaySnapshot): Boolean = snapshot.mode == XRayMode.Translucent && XRayTranslucency.isGhostSection()
 }
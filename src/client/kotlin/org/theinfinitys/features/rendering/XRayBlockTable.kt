@@ -0,0 +1,90 @@
+package org.theinfinitys.features.rendering
+
+import net.minecraft.block.Block
+import net.minecraft.block.BlockState
+import net.minecraft.block.FluidBlock
+import net.minecraft.registry.Registries
+import net.minecraft.util.Identifier
+
+/**
+ * XRay の判定表。
+ *
+ * ブロックステートの生ID（Block.getRawIdFromState）ごとに、ThroughBlockList と ExposedBlockList に
+ * 含まれるかどうかをビット列で保持します。不変なので、チャンクビルダーのスレッドからロックなしで参照でき、
+ * 判定は配列の読み取りとビット演算のみで完了します。
+ * ビット列はリストに含まれる最大の生IDまでしか持たないため、ディメンションのプロファイルごとに作成しても小さく収まります。
+ * XRayOreIndex に載せるブロック（isIndexed）は、ExposedBlockList のうち水や溶岩などの流体そのものを除いたものです。
+ */
+class XRayBlockTable private constructor(
+    private val through: LongArray,
+    private val exposed: LongArray,
+    private val indexed: LongArray,
+) {
+    fun isThrough(state: BlockState): Boolean = test(through, Block.getRawIdFromState(state))
+
+    fun isExposed(state: BlockState): Boolean = test(exposed, Block.getRawIdFromState(state))
+
+    /**
+     * ThroughBlockList と ExposedBlockList のどちらかに含まれるかを返します。
+     */
+    fun isTarget(state: BlockState): Boolean {
+        val id = Block.getRawIdFromState(state)
+        return test(through, id) || test(exposed, id)
+    }
+
+    /**
+     * XRayOreIndex で位置を保持するかを返します。ThroughBlockList だけのブロック（ガラスなど）と流体は含みません。
+     * 流体は海や溶岩湖で膨大な数になり、流れるたびにステートが変わるため、探す対象として索引しません。
+     */
+    fun isIndexed(state: BlockState): Boolean = test(indexed, Block.getRawIdFromState(state))
+
+    companion object {
+        val EMPTY = XRayBlockTable(LongArray(0), LongArray(0), LongArray(0))
+
+        /**
+         * ブロックIDのリストから判定表を作成します。存在しないIDは無視されます。
+         */
+        fun compile(
+            throughIds: Collection<String>,
+            exposedIds: Collection<String>,
+        ): XRayBlockTable {
+            val words = (Block.STATE_IDS.size() + 63) ushr 6
+            return XRayBlockTable(
+                toBits(throughIds, words),
+                toBits(exposedIds, words),
+                toBits(exposedIds, words) { it.block !is FluidBlock },
+            )
+        }
+
+        private fun toBits(
+            ids: Collection<String>,
+            words: Int,
+            predicate: (BlockState) -> Boolean = { true },
+        ): LongArray {
+            val bits = LongArray(words)
+            for (id in ids) {
+                val identifier = Identifier.tryParse(id) ?: continue
+                if (!Registries.BLOCK.containsId(identifier)) continue
+                // ブロックのすべてのステート（向き・水没など）を対象にする
+                for (state in Registries.BLOCK.get(identifier).stateManager.states) {
+                    if (!predicate(state)) continue
+                    val rawId = Block.getRawIdFromState(state)
+                    if (rawId < 0 || rawId ushr 6 >= words) continue
+                    bits[rawId ushr 6] = bits[rawId ushr 6] or (1L shl rawId)
+                }
+            }
+            // 末尾の 0 の語は test() で範囲外として扱えるため切り詰め、リストに含まれる最大の生IDまでの大きさにする
+            var used = bits.size
+            while (used > 0 && bits[used - 1] == 0L) used--
+            return if (used == bits.size) bits else bits.copyOf(used)
+        }
+
+        private fun test(
+            bits: LongArray,
+            rawId: Int,
+        ): Boolean {
+            val word = rawId ushr 6
+            return word < bits.size && bits[word] and (1L shl rawId) != 0L
+        }
+    }
+}
@@ -0,0 +1,698 @@
+package org.theinfinitys.features.rendering
+
+import it.unimi.dsi.fastutil.ints.IntArrayFIFOQueue
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap
+import it.unimi.dsi.fastutil.longs.LongArrayFIFOQueue
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet
+import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientChunkEvents
+import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientTickEvents
+import net.minecraft.block.BlockState
+import net.minecraft.client.MinecraftClient
+import net.minecraft.client.world.ClientWorld
+import net.minecraft.util.math.BlockPos
+import net.minecraft.util.math.ChunkPos
+import net.minecraft.util.math.ChunkSectionPos
+import net.minecraft.util.math.Direction
+import net.minecraft.world.chunk.PalettedContainer
+import net.minecraft.world.chunk.WorldChunk
+import org.theinfinitys.InfiniteClient
+import org.theinfinitys.SectionRebuildScheduler
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicReferenceArray
+import kotlin.math.abs
+
+/**
+ * XRay の CaveConnected モードで使う、プレイヤーのいる洞窟とつながっている空間のグラフ。
+ *
+ * バニラの ChunkOcclusionData と同じように、セクションごとに空気または流体のブロックを連結成分に分け、
+ * その結果をセクションに保存します。セクション間の連結は、境界の面で向かい合うブロックの成分どうしをたどって求めます。
+ * セクションの内容が変わったときは、そのセクションと接する到達済みの成分からだけ塗り広げます。
+ * プレイヤーの目の位置から全体を塗り直すのは、プレイヤーがまだ塗られていない成分に移動したときと、
+ * 到達済みのセクションで空間がふさがれたり取り除かれたりしたときだけです。
+ *
+ * グラフはプレイヤーから CaveRadius 以内のチャンクだけを対象にします。対象外のセクションでは isConnected() が null を返し、
+ * OnlyExposed モードと同じ判定になります。
+ */
+object XRayCaveGraph {
+    private const val SOLID: Short = -1
+
+    // 全体の塗り直しの要求を受けてから実行するまでの最小ティック数。移動中に何度も塗り直さない
+    private const val FLOOD_INTERVAL_TICKS = 10
+
+    /**
+     * 一つのセクションの連結成分。成分の分け方は公開後に変更せず、セクションが変わったときは新しいノードに置き換える。
+     */
+    class SectionNode internal constructor(
+        // ChunkSectionPos.asLong
+        val key: Long,
+        // ブロックごとの成分の番号。空気や流体でないブロックは SOLID。null の場合はすべてが成分 0 か、すべてが SOLID
+        private val components: ShortArray?,
+        val count: Int,
+        // ExposedBlockList だけに含まれるブロックがあるかどうか。塗りつぶしの結果が変わったときに作り直すかの判定に使う
+        val hasTarget: Boolean,
+    ) {
+        // 到達した成分のビット列。走査スレッドだけが書き込み、差分の塗りつぶしではビットを足すだけなので、その場で書き換える
+        @Volatile
+        internal var reached: LongArray? = null
+
+        fun componentAt(index: Int): Int =
+            when {
+                components != null -> components[index].toInt()
+                count > 0 -> 0
+                else -> -1
+            }
+    }
+
+    /**
+     * 範囲内のセクションを、チャンク座標を幅で割った余りの位置に並べた配列。
+     * バニラの ClientChunkManager のチャンクの配列と同じ考え方で、要素を置き換えるだけで更新できるため、
+     * チャンクビルダーのスレッドはロックもコピーもなしに参照できる。
+     */
+    private class SectionGrid(
+        private val width: Int,
+        private val bottom: Int,
+        private val height: Int,
+    ) {
+        private val slots = AtomicReferenceArray<SectionNode>(width * width * height)
+
+        private fun slot(key: Long): Int {
+            val y = ChunkSectionPos.unpackY(key) - bottom
+            if (y !in 0 until height) return -1
+            val x = Math.floorMod(ChunkSectionPos.unpackX(key), width)
+            val z = Math.floorMod(ChunkSectionPos.unpackZ(key), width)
+            return (x * width + z) * height + y
+        }
+
+        fun get(key: Long): SectionNode? {
+            val index = slot(key)
+            if (index < 0) return null
+            val node = slots.get(index) ?: return null
+            // 同じ位置に残っている別のチャンクのセクションは範囲外として扱う
+            return if (node.key == key) node else null
+        }
+
+        // 以下は走査スレッドからのみ呼び出す
+        fun put(node: SectionNode) {
+            val index = slot(node.key)
+            if (index >= 0) slots.set(index, node)
+        }
+
+        fun remove(key: Long): SectionNode? {
+            val node = get(key) ?: return null
+            slots.set(slot(key), null)
+            return node
+        }
+    }
+
+    private val executor =
+        Executors.newSingleThreadExecutor { runnable ->
+            Thread(runnable, "Infinite XRay Caves").apply { isDaemon = true }
+        }
+    private val directions = Direction.values()
+
+    @Volatile
+    private var grid: SectionGrid? = null
+
+    // 以下は走査スレッドからのみ参照する
+    // 到達した成分があるセクション。全体の塗り直しでは、このセクションと新しく到達したセクションだけを比べる
+    private var reachedKeys = LongOpenHashSet()
+    private val sectionQueue = LongArrayFIFOQueue()
+    private val componentQueue = IntArrayFIFOQueue()
+
+    private val floodQueued = AtomicBoolean()
+
+    @Volatile
+    private var table: XRayBlockTable? = null
+
+    @Volatile
+    private var generation = 0
+
+    // プレイヤーの目の位置（BlockPos.asLong）。クライアントスレッドで更新し、塗りつぶしの起点に使う
+    @Volatile
+    private var origin = 0L
+
+    // 以下はクライアントスレッドからのみ参照する
+    private var radiusChunks = 0
+    private var currentWorld: ClientWorld? = null
+    private val covered = LongOpenHashSet()
+    private var lastCenter = Long.MIN_VALUE
+    private var floodRequestedAt = 0L
+    private var floodRequested = false
+    private var ticks = 0L
+    private var installed = false
+
+    fun install() {
+        if (installed) return
+        installed = true
+        ClientChunkEvents.CHUNK_LOAD.register { world, chunk -> onChunkLoad(world, chunk) }
+        ClientChunkEvents.CHUNK_UNLOAD.register { _, chunk -> onChunkUnload(chunk) }
+        ClientTickEvents.END_CLIENT_TICK.register { client -> onTick(client) }
+    }
+
+    /**
+     * 判定表と範囲を設定し、グラフを作り直します。クライアントスレッドから呼び出してください。
+     */
+    fun start(
+        blockTable: XRayBlockTable,
+        radius: Int,
+    ) {
+        table = blockTable
+        radiusChunks = (radius + 15) shr 4
+        reset()
+    }
+
+    fun stop() {
+        table = null
+        reset()
+    }
+
+    /**
+     * グラフだけを破棄します。判定表は保持するため、次に読み込まれたチャンクから再び作成されます。
+     */
+    fun clear() {
+        reset()
+    }
+
+    private fun reset() {
+        generation++
+        grid = null
+        covered.clear()
+        currentWorld = null
+        lastCenter = Long.MIN_VALUE
+        floodRequested = false
+        submit {
+            reachedKeys.clear()
+            sectionQueue.clear()
+            componentQueue.clear()
+        }
+    }
+
+    /**
+     * 指定位置のブロックが、プレイヤーのいる洞窟とつながった空気または流体に接しているかを返します。
+     * グラフの範囲外のセクションに接している場合は null を返すため、隣接ブロックを参照して判定してください。
+     * チャンクビルダーのスレッドから呼び出されます。
+     */
+    fun isConnected(pos: BlockPos): Boolean? {
+        if (table == null) return null
+        val current = grid ?: return null
+        var unknown = false
+        for (direction in directions) {
+            val x = pos.x + direction.offsetX
+            val y = pos.y + direction.offsetY
+            val z = pos.z + direction.offsetZ
+            val node = current.get(ChunkSectionPos.asLong(x shr 4, y shr 4, z shr 4))
+            if (node == null) {
+                unknown = true
+                continue
+            }
+            val component = node.componentAt(cellIndex(x and 15, y and 15, z and 15))
+            if (component < 0) continue
+            val bits = node.reached ?: continue
+            if (testBit(bits, component)) return true
+        }
+        return if (unknown) null else false
+    }
+
+    private fun onTick(client: MinecraftClient) {
+        if (table == null) return
+        val world = client.world ?: return
+        val entity = client.cameraEntity ?: return
+        ticks++
+        if (world !== currentWorld) {
+            reset()
+            currentWorld = world
+            // 範囲から外れたチャンクは中心から radiusChunks + 1 を超えたときに取り除くため、その分の幅を確保する
+            grid = SectionGrid(radiusChunks * 2 + 3, world.bottomSectionCoord, world.countVerticalSections())
+        }
+        val eye = BlockPos.ofFloored(entity.eyePos)
+        origin = eye.asLong()
+
+        val center = ChunkPos.toLong(eye.x shr 4, eye.z shr 4)
+        if (center != lastCenter) {
+            lastCenter = center
+            updateCoverage(world, eye.x shr 4, eye.z shr 4)
+        }
+
+        // 目の位置の成分がすでに塗られていれば、同じ洞窟の中を移動しているだけなので塗り直さない
+        if (!isReached(eye)) requestFlood()
+        if (floodRequested && ticks - floodRequestedAt >= FLOOD_INTERVAL_TICKS) {
+            floodRequested = false
+            queueFlood()
+        }
+    }
+
+    private fun isReached(pos: BlockPos): Boolean {
+        val current = grid ?: return false
+        // まだ調べていないセクションは、調べ終わったときに塗り直しが要求される
+        val node = current.get(ChunkSectionPos.asLong(pos.x shr 4, pos.y shr 4, pos.z shr 4)) ?: return true
+        val component = node.componentAt(cellIndex(pos.x and 15, pos.y and 15, pos.z and 15))
+        if (component < 0) return true
+        val bits = node.reached ?: return false
+        return testBit(bits, component)
+    }
+
+    private fun requestFlood() {
+        if (floodRequested) return
+        floodRequested = true
+        floodRequestedAt = ticks
+    }
+
+    // 範囲に入ったチャンクを追加し、範囲から十分に離れたチャンクを取り除く
+    private fun updateCoverage(
+        world: ClientWorld,
+        centerX: Int,
+        centerZ: Int,
+    ) {
+        val target = grid ?: return
+        val removed = ArrayList<Long>()
+        val iterator = covered.iterator()
+        while (iterator.hasNext()) {
+            val key = iterator.nextLong()
+            if (chunkDistance(key, centerX, centerZ) > radiusChunks + 1) {
+                iterator.remove()
+                removed.add(key)
+            }
+        }
+        if (removed.isNotEmpty()) {
+            val expected = generation
+            val bottom = world.bottomSectionCoord
+            val count = world.countVerticalSections()
+            submit {
+                if (generation != expected) return@submit
+                var wasReached = false
+                for (key in removed) wasReached = removeChunk(target, key, bottom, count) || wasReached
+                if (wasReached) requestFloodFromWorker()
+            }
+        }
+        for (chunkX in centerX - radiusChunks..centerX + radiusChunks) {
+            for (chunkZ in centerZ - radiusChunks..centerZ + radiusChunks) {
+                if (!world.chunkManager.isChunkLoaded(chunkX, chunkZ)) continue
+                if (covered.contains(ChunkPos.toLong(chunkX, chunkZ))) continue
+                analyze(world.getChunk(chunkX, chunkZ))
+            }
+        }
+    }
+
+    private fun chunkDistance(
+        key: Long,
+        centerX: Int,
+        centerZ: Int,
+    ): Int = maxOf(abs(ChunkPos.getPackedX(key) - centerX), abs(ChunkPos.getPackedZ(key) - centerZ))
+
+    private fun onChunkLoad(
+        world: ClientWorld,
+        chunk: WorldChunk,
+    ) {
+        if (table == null || world !== currentWorld || lastCenter == Long.MIN_VALUE) return
+        val key = chunk.pos.toLong()
+        if (chunkDistance(key, ChunkPos.getPackedX(lastCenter), ChunkPos.getPackedZ(lastCenter)) > radiusChunks) return
+        analyze(chunk)
+    }
+
+    private fun onChunkUnload(chunk: WorldChunk) {
+        val world = currentWorld ?: return
+        val target = grid ?: return
+        val key = chunk.pos.toLong()
+        if (!covered.remove(key)) return
+        val expected = generation
+        val bottom = world.bottomSectionCoord
+        val count = world.countVerticalSections()
+        submit {
+            if (generation != expected) return@submit
+            if (removeChunk(target, key, bottom, count)) requestFloodFromWorker()
+        }
+    }
+
+    // 到達した成分があったセクションを取り除いた場合は true。そのセクションを通っていた連結が切れるため、全体を塗り直す
+    private fun removeChunk(
+        target: SectionGrid,
+        key: Long,
+        bottom: Int,
+        count: Int,
+    ): Boolean {
+        val chunkX = ChunkPos.getPackedX(key)
+        val chunkZ = ChunkPos.getPackedZ(key)
+        var wasReached = false
+        for (index in 0 until count) {
+            val sectionKey = ChunkSectionPos.asLong(chunkX, bottom + index, chunkZ)
+            if (target.remove(sectionKey)?.reached != null) wasReached = true
+            reachedKeys.remove(sectionKey)
+        }
+        return wasReached
+    }
+
+    // 空気と流体だけのセクションや、それらを含まないセクションはコピーせずに済ませる
+    private fun analyze(chunk: WorldChunk) {
+        val blockTable = table ?: return
+        val target = grid ?: return
+        covered.add(chunk.pos.toLong())
+        val chunkX = chunk.pos.x
+        val chunkZ = chunk.pos.z
+        val bottom = chunk.bottomSectionCoord
+        val sections = chunk.sectionArray
+        val keys = LongArray(sections.size)
+        val containers = arrayOfNulls<PalettedContainer<BlockState>>(sections.size)
+        val uniform = IntArray(sections.size)
+        val targets = BooleanArray(sections.size)
+        for ((index, section) in sections.withIndex()) {
+            keys[index] = ChunkSectionPos.asLong(chunkX, bottom + index, chunkZ)
+            targets[index] = !section.isEmpty && section.hasAny { blockTable.isExposed(it) && !blockTable.isThrough(it) }
+            when {
+                section.isEmpty -> uniform[index] = 1
+                !section.hasAny { XRayOreIndex.isOpen(it) } -> uniform[index] = 0
+                !section.hasAny { !XRayOreIndex.isOpen(it) } -> uniform[index] = 1
+                else -> {
+                    uniform[index] = -1
+                    containers[index] = section.blockStateContainer.copy()
+                }
+            }
+        }
+        val expected = generation
+        submit {
+            if (generation != expected) return@submit
+            val added =
+                Array(keys.size) { index ->
+                    val container = containers[index]
+                    if (container != null) {
+                        label(keys[index], container, targets[index])
+                    } else {
+                        SectionNode(keys[index], null, uniform[index], targets[index])
+                    }
+                }
+            floodFrom(target, added)
+        }
+    }
+
+    /**
+     * ブロック更新パケットの適用後に呼び出されます。空気や流体かどうかが変わったブロックのセクションだけを調べ直します。
+     */
+    fun onBlockUpdate(
+        world: ClientWorld,
+        pos: BlockPos,
+        state: BlockState,
+    ) {
+        val blockTable = table ?: return
+        val target = grid ?: return
+        if (world !== currentWorld || !covered.contains(ChunkPos.toLong(pos.x shr 4, pos.z shr 4))) return
+        val key = ChunkSectionPos.asLong(pos.x shr 4, pos.y shr 4, pos.z shr 4)
+        val node = target.get(key)
+        val open = XRayOreIndex.isOpen(state)
+        var closed = false
+        if (node != null) {
+            val wasOpen = node.componentAt(cellIndex(pos.x and 15, pos.y and 15, pos.z and 15)) >= 0
+            val isTarget = blockTable.isExposed(state) && !blockTable.isThrough(state)
+            if (wasOpen == open && (!isTarget || node.hasTarget)) return
+            closed = wasOpen && !open
+        }
+        val chunk = world.getChunk(pos.x shr 4, pos.z shr 4)
+        val index = (pos.y shr 4) - chunk.bottomSectionCoord
+        val section = chunk.sectionArray.getOrNull(index) ?: return
+        val container = section.blockStateContainer.copy()
+        val hasTarget = section.hasAny { blockTable.isExposed(it) && !blockTable.isThrough(it) }
+        val expected = generation
+        submit {
+            if (generation != expected) return@submit
+            // 到達済みの空間がふさがれると、その先が切り離されているかもしれないため全体を塗り直す
+            if (closed && target.get(key)?.reached != null) requestFloodFromWorker()
+            floodFrom(target, arrayOf(label(key, container, hasTarget)))
+        }
+    }
+
+    // セクション内の空気と流体を6方向の隣接で連結成分に分ける
+    private fun label(
+        key: Long,
+        container: PalettedContainer<BlockState>,
+        hasTarget: Boolean,
+    ): SectionNode {
+        val components = ShortArray(4096) { SOLID }
+        val open = BooleanArray(4096)
+        for (y in 0 until 16) {
+            for (z in 0 until 16) {
+                for (x in 0 until 16) {
+                    open[cellIndex(x, y, z)] = XRayOreIndex.isOpen(container.get(x, y, z))
+                }
+            }
+        }
+        val stack = IntArray(4096)
+        var count = 0
+        for (start in 0 until 4096) {
+            if (!open[start] || components[start] != SOLID) continue
+            val id = count++.toShort()
+            var top = 0
+            stack[top++] = start
+            components[start] = id
+            while (top > 0) {
+                val cell = stack[--top]
+                val x = cell and 15
+                val z = (cell shr 4) and 15
+                val y = cell shr 8
+                for (direction in directions) {
+                    val nx = x + direction.offsetX
+                    val ny = y + direction.offsetY
+                    val nz = z + direction.offsetZ
+                    if (nx !in 0..15 || ny !in 0..15 || nz !in 0..15) continue
+                    val next = cellIndex(nx, ny, nz)
+                    if (!open[next] || components[next] != SOLID) continue
+                    components[next] = id
+                    stack[top++] = next
+                }
+            }
+        }
+        return SectionNode(key, if (count == 0) null else components, count, hasTarget)
+    }
+
+    private fun requestFloodFromWorker() {
+        MinecraftClient.getInstance().execute { requestFlood() }
+    }
+
+    private fun queueFlood() {
+        val target = grid ?: return
+        if (!floodQueued.compareAndSet(false, true)) return
+        val expected = generation
+        submit {
+            floodQueued.set(false)
+            if (generation == expected) flood(target)
+        }
+    }
+
+    /**
+     * 変わったセクションを配置し、到達済みの隣接セクションと面で接する成分から塗り広げます。
+     * 塗りつぶしは到達済みの成分で止まるため、変わったセクションの周りだけを調べます。
+     */
+    private fun floodFrom(
+        target: SectionGrid,
+        added: Array<SectionNode>,
+    ) {
+        val touched = LongOpenHashSet()
+        for (node in added) {
+            val key = node.key
+            touched.add(key)
+            // 公開する前に隣接セクションから塗っておき、差し替えの直後に未到達として見えないようにする
+            if (node.count > 0) {
+                for (direction in directions) {
+                    val neighbor = target.get(offset(key, direction)) ?: continue
+                    val bits = neighbor.reached ?: continue
+                    val opposite = direction.opposite
+                    for (u in 0 until 16) {
+                        for (v in 0 until 16) {
+                            val other = neighbor.componentAt(faceCell(opposite, u, v))
+                            if (other < 0 || !testBit(bits, other)) continue
+                            val component = node.componentAt(faceCell(direction, u, v))
+                            if (component >= 0) markInPlace(node, component)
+                        }
+                    }
+                }
+            }
+            target.put(node)
+        }
+        propagate(target, touched) { node -> bitsOf(node) }
+        requestRebuilds(target, touched)
+    }
+
+    // 目の位置の成分から、セクションの境界を越えてつながった成分をすべて塗り直す
+    private fun flood(target: SectionGrid) {
+        val start = origin
+        val startX = BlockPos.unpackLongX(start)
+        val startY = BlockPos.unpackLongY(start)
+        val startZ = BlockPos.unpackLongZ(start)
+        val fresh = Long2ObjectOpenHashMap<LongArray>()
+        val freshBits = { node: SectionNode ->
+            fresh.get(node.key) ?: LongArray(words(node.count)).also { fresh.put(node.key, it) }
+        }
+
+        // 目の位置がブロックの中なら、隣接する空間から始める
+        for (i in -1 until directions.size) {
+            val x = if (i < 0) startX else startX + directions[i].offsetX
+            val y = if (i < 0) startY else startY + directions[i].offsetY
+            val z = if (i < 0) startZ else startZ + directions[i].offsetZ
+            val node = target.get(ChunkSectionPos.asLong(x shr 4, y shr 4, z shr 4)) ?: continue
+            val component = node.componentAt(cellIndex(x and 15, y and 15, z and 15))
+            if (component >= 0) mark(node, component, freshBits(node))
+        }
+        propagate(target, null, freshBits)
+
+        // 到達した成分が変わりうるのは、前回到達していたセクションと今回到達したセクションだけ
+        val touched = LongOpenHashSet()
+        val candidates = LongOpenHashSet(reachedKeys)
+        candidates.addAll(fresh.keys)
+        val iterator = candidates.iterator()
+        while (iterator.hasNext()) {
+            val key = iterator.nextLong()
+            val node = target.get(key) ?: continue
+            val after = fresh.get(key)
+            if (sameBits(node.reached, after)) continue
+            node.reached = after
+            touched.add(key)
+        }
+        reachedKeys = LongOpenHashSet(fresh.keys)
+        requestRebuilds(target, touched)
+    }
+
+    // キューに入った成分から、セクションの境界を越えてつながった成分を塗る。touched には新しく塗ったセクションを加える
+    private inline fun propagate(
+        target: SectionGrid,
+        touched: LongOpenHashSet?,
+        bitsFor: (SectionNode) -> LongArray,
+    ) {
+        while (!sectionQueue.isEmpty) {
+            val key = sectionQueue.dequeueLong()
+            val component = componentQueue.dequeueInt()
+            val node = target.get(key) ?: continue
+            for (direction in directions) {
+                val neighborKey = offset(key, direction)
+                val neighbor = target.get(neighborKey) ?: continue
+                if (neighbor.count == 0) continue
+                val opposite = direction.opposite
+                var bits: LongArray? = null
+                for (u in 0 until 16) {
+                    for (v in 0 until 16) {
+                        if (node.componentAt(faceCell(direction, u, v)) != component) continue
+                        val next = neighbor.componentAt(faceCell(opposite, u, v))
+                        if (next < 0) continue
+                        if (bits == null) bits = bitsFor(neighbor)
+                        if (mark(neighbor, next, bits)) touched?.add(neighborKey)
+                    }
+                }
+            }
+        }
+    }
+
+    private fun markInPlace(
+        node: SectionNode,
+        component: Int,
+    ): Boolean = mark(node, component, bitsOf(node))
+
+    // 差分の塗りつぶしで使う、ノードが持つビット列
+    private fun bitsOf(node: SectionNode): LongArray =
+        node.reached ?: LongArray(words(node.count)).also {
+            node.reached = it
+            reachedKeys.add(node.key)
+        }
+
+    private fun mark(
+        node: SectionNode,
+        component: Int,
+        bits: LongArray,
+    ): Boolean {
+        if (testBit(bits, component)) return false
+        setBit(bits, component)
+        sectionQueue.enqueue(node.key)
+        componentQueue.enqueue(component)
+        return true
+    }
+
+    // 到達した成分が変わったセクションのうち、対象ブロックを含むものとその隣接セクションを作り直す
+    private fun requestRebuilds(
+        target: SectionGrid,
+        touched: LongOpenHashSet,
+    ) {
+        val changed = LongOpenHashSet()
+        val iterator = touched.iterator()
+        while (iterator.hasNext()) {
+            val key = iterator.nextLong()
+            // 境界の成分の変化は隣接セクションの対象ブロックの見え方も変える
+            if (target.get(key)?.hasTarget == true) changed.add(key)
+            for (direction in directions) {
+                val neighborKey = offset(key, direction)
+                if (target.get(neighborKey)?.hasTarget == true) changed.add(neighborKey)
+            }
+        }
+        if (changed.isEmpty()) return
+        val keys = changed.toLongArray()
+        MinecraftClient.getInstance().execute {
+            for (key in keys) {
+                SectionRebuildScheduler.requestSectionAt(
+                    ChunkSectionPos.getBlockCoord(ChunkSectionPos.unpackX(key)),
+                    ChunkSectionPos.getBlockCoord(ChunkSectionPos.unpackY(key)),
+                    ChunkSectionPos.getBlockCoord(ChunkSectionPos.unpackZ(key)),
+                )
+            }
+        }
+    }
+
+    private fun sameBits(
+        a: LongArray?,
+        b: LongArray?,
+    ): Boolean {
+        if (a == null || b == null) return a == null && b == null
+        return a.contentEquals(b)
+    }
+
+    private fun offset(
+        key: Long,
+        direction: Direction,
+    ): Long =
+        ChunkSectionPos.asLong(
+            ChunkSectionPos.unpackX(key) + direction.offsetX,
+            ChunkSectionPos.unpackY(key) + direction.offsetY,
+            ChunkSectionPos.unpackZ(key) + direction.offsetZ,
+        )
+
+    private fun words(count: Int): Int = (count + 63) ushr 6
+
+    // direction の面にあるブロックの番号。向かい合う面では同じ (u, v) が隣り合うブロックを指す
+    private fun faceCell(
+        direction: Direction,
+        u: Int,
+        v: Int,
+    ): Int =
+        when (direction) {
+            Direction.EAST -> cellIndex(15, u, v)
+            Direction.WEST -> cellIndex(0, u, v)
+            Direction.UP -> cellIndex(u, 15, v)
+            Direction.DOWN -> cellIndex(u, 0, v)
+            Direction.SOUTH -> cellIndex(u, v, 15)
+            Direction.NORTH -> cellIndex(u, v, 0)
+        }
+
+    private fun cellIndex(
+        x: Int,
+        y: Int,
+        z: Int,
+    ): Int = (y shl 8) or (z shl 4) or x
+
+    private fun testBit(
+        bits: LongArray,
+        bit: Int,
+    ): Boolean = bits[bit ushr 6] and (1L shl bit) != 0L
+
+    private fun setBit(
+        bits: LongArray,
+        bit: Int,
+    ) {
+        bits[bit ushr 6] = bits[bit ushr 6] or (1L shl bit)
+    }
+
+    private fun submit(task: () -> Unit) {
+        executor.execute {
+            try {
+                task()
+            } catch (e: Exception) {
+                MinecraftClient.getInstance().execute {
+                    InfiniteClient.error("XRayの洞窟グラフの更新に失敗しました: ${e.message}")
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,471 @@
+package org.theinfinitys.features.rendering
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap
+import net.minecraft.util.math.BlockPos
+import net.minecraft.util.math.ChunkPos
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+import java.nio.file.StandardOpenOption
+import java.util.zip.CRC32
+import kotlin.io.path.name
+import kotlin.math.abs
+
+/**
+ * XRayOreIndex のチャンクごとの対象ブロックの位置を保存するファイル。サーバー（シングルプレイではワールド）とディメンションごとに一つのディレクトリを使います。
+ *
+ * 記録は追記専用のセグメントファイルに書き込み、同じチャンクの記録は後に書いたものを有効とします。
+ * 有効な記録の位置・件数・CRC32 はメモリに持つため、追記のときにファイルを読み返すことはありません。
+ * 読み出しは FileChannel.read で記録ごとに行い、セグメントはメモリマップしません（マップは GC まで解放されず、Windows では削除や切り詰めを妨げるため）。
+ * 上書きされた記録が有効な記録より多くなったら、有効な記録だけを新しいベースセグメントに書き出し、古いセグメントを削除します。
+ *
+ * 記録ごとに CRC32 を持たせ、開くときに書き込みの途中で途切れた末尾を切り捨てます。
+ * そのためプレイ中に開いたままにしても、異常終了で失われるのは最後に追記していた記録だけです。
+ * XRayOreIndex の走査スレッドからのみ使用してください。
+ */
+class XRayIndexStore private constructor(
+    private val directory: Path,
+    private val stateCount: Int,
+) : AutoCloseable {
+    companion object {
+        private const val MAGIC = 0x49585249 // "IXRI"
+        private const val FORMAT_VERSION = 1
+        private const val FLAG_BASE = 1
+
+        // セグメントのヘッダ: MAGIC, FORMAT_VERSION, ブロックステートの数, フラグ
+        private const val HEADER_BYTES = 16
+
+        // 記録のヘッダ: ChunkPos.toLong, 件数, 本体の CRC32。件数 0 はチャンクに対象ブロックがなくなったことを表す
+        private const val RECORD_HEADER_BYTES = 16
+
+        // 本体の1件: 上位32ビットがチャンク内の位置 (y shl 8 | z shl 4 | x)、下位32ビットがブロックステートの生ID
+        private const val ENTRY_BYTES = 8
+        private const val MAX_ENTRIES = 16 * 16 * 4096
+
+        private const val SEGMENT_BYTES = 8L shl 20
+        private const val COMPACT_MIN_BYTES = 1L shl 20
+        private const val NO_LOCATION = -1L
+
+        private val SEGMENT_NAME = Regex("segment-(\\d+)\\.bin")
+
+        /**
+         * directory のセグメントを開き、有効な記録の位置を読み込みます。
+         * ブロックステートの数が保存時と異なる場合は生IDの対応が変わっているため、既存の記録を破棄します。
+         */
+        fun open(
+            directory: Path,
+            stateCount: Int,
+        ): XRayIndexStore = XRayIndexStore(directory, stateCount).also { it.load() }
+
+        private fun localOf(packed: Long): Int =
+            (BlockPos.unpackLongY(packed) shl 8) or ((BlockPos.unpackLongZ(packed) and 15) shl 4) or (BlockPos.unpackLongX(packed) and 15)
+    }
+
+    private class Segment(
+        val id: Int,
+        val path: Path,
+        val channel: FileChannel,
+        var size: Long,
+    ) {
+        fun release() {
+            channel.close()
+        }
+    }
+
+    private val segments = Int2ObjectOpenHashMap<Segment>()
+
+    // ChunkPos.toLong から、有効な記録の位置 (セグメントID shl 32 | オフセット) への対応
+    private val locations = Long2LongOpenHashMap().apply { defaultReturnValue(NO_LOCATION) }
+
+    // ChunkPos.toLong から、有効な記録の件数と CRC32 (件数 shl 32 | CRC32) への対応
+    private val records = Long2LongOpenHashMap()
+    private lateinit var active: Segment
+    private var nextId = 0
+
+    // 有効な記録とすべての記録のバイト数。コンパクションの判定に使う
+    private var liveBytes = 0L
+    private var totalBytes = 0L
+
+    private val crc = CRC32()
+    private var scratch = ByteBuffer.allocate(RECORD_HEADER_BYTES + 256 * ENTRY_BYTES)
+
+    /**
+     * 有効な記録があるチャンクの数を返します。
+     */
+    val size: Int get() = locations.size
+
+    private fun load() {
+        Files.createDirectories(directory)
+        val found = ArrayList<Pair<Int, Path>>()
+        Files.list(directory).use { stream ->
+            for (path in stream) {
+                val name = path.name
+                if (name.endsWith(".tmp")) {
+                    // コンパクションの途中で終了した
+                    deleteQuietly(path)
+                    continue
+                }
+                val match = SEGMENT_NAME.matchEntire(name) ?: continue
+                found.add(match.groupValues[1].toInt() to path)
+            }
+        }
+        found.sortBy { it.first }
+
+        val opened = ArrayList<Segment>()
+        val incompatible = HashSet<Int>()
+        var base = -1
+        for ((id, path) in found) {
+            val channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)
+            val segment = Segment(id, path, channel, channel.size())
+            opened.add(segment)
+            nextId = maxOf(nextId, id + 1)
+            if (segment.size < HEADER_BYTES) continue
+            val header = readHeader(channel)
+            if (header.getInt(0) != MAGIC || header.getInt(4) != FORMAT_VERSION || header.getInt(8) != stateCount) {
+                // 削除できずに残った古いセグメントがあっても、新しいセグメントまで巻き込まないようセグメントごとに判定する
+                incompatible.add(id)
+            } else if (header.getInt(12) and FLAG_BASE != 0) {
+                base = id
+            }
+        }
+        for (segment in opened) {
+            // ベースセグメントより前のセグメントはコンパクションで不要になったもの
+            if (segment.id in incompatible || segment.id < base || segment.size < HEADER_BYTES) {
+                segment.release()
+                deleteQuietly(segment.path)
+                continue
+            }
+            segments.put(segment.id, segment)
+            replay(segment)
+        }
+
+        val last = segments.values.maxByOrNull { it.id }
+        active = if (last == null || last.size >= SEGMENT_BYTES) createSegment(0) else last
+        if (shouldCompact()) compact()
+    }
+
+    // セグメントの記録を先頭から読み、壊れた記録以降を切り捨てる
+    private fun replay(segment: Segment) {
+        val header = ByteBuffer.allocate(RECORD_HEADER_BYTES)
+        var offset = HEADER_BYTES.toLong()
+        while (offset + RECORD_HEADER_BYTES <= segment.size) {
+            if (!readFully(segment.channel, header.clear(), offset)) break
+            val key = header.getLong(0)
+            val count = header.getInt(8)
+            val checksum = header.getInt(12)
+            if (count < 0 || count > MAX_ENTRIES) break
+            val length = RECORD_HEADER_BYTES + count * ENTRY_BYTES
+            if (offset + length > segment.size) break
+            val body = readBody(segment.channel, offset, count) ?: break
+            if (checksumOf(body, 0, count * ENTRY_BYTES) != checksum) break
+            apply(key, count, checksum, (segment.id.toLong() shl 32) or offset, length)
+            offset += length
+        }
+        if (offset < segment.size) {
+            segment.size = offset
+            try {
+                segment.channel.truncate(offset)
+            } catch (_: Exception) {
+                // 切り詰められない環境でも、次の追記で上書きされ、CRC32 で読み飛ばされる
+            }
+        }
+        totalBytes += segment.size
+    }
+
+    private fun apply(
+        key: Long,
+        count: Int,
+        checksum: Int,
+        location: Long,
+        length: Int,
+    ) {
+        if (locations.get(key) != NO_LOCATION) liveBytes -= lengthOf(key)
+        if (count == 0) {
+            locations.remove(key)
+            records.remove(key)
+        } else {
+            locations.put(key, location)
+            records.put(key, recordOf(count, checksum))
+            liveBytes += length
+        }
+    }
+
+    private fun createSegment(flags: Int): Segment {
+        val id = nextId++
+        val path = directory.resolve("segment-$id.bin")
+        val channel =
+            FileChannel.open(
+                path,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE,
+            )
+        writeFully(channel, header(flags), 0)
+        val segment = Segment(id, path, channel, HEADER_BYTES.toLong())
+        segments.put(id, segment)
+        totalBytes += HEADER_BYTES
+        return segment
+    }
+
+    private fun header(flags: Int): ByteBuffer =
+        ByteBuffer
+            .allocate(HEADER_BYTES)
+            .putInt(MAGIC)
+            .putInt(FORMAT_VERSION)
+            .putInt(stateCount)
+            .putInt(flags)
+            .flip()
+
+    private fun segmentOf(location: Long): Segment =
+        segments.get((location ushr 32).toInt()) ?: throw IllegalStateException("セグメント ${location ushr 32} が見つかりません。")
+
+    private fun recordOf(
+        count: Int,
+        checksum: Int,
+    ): Long = (count.toLong() shl 32) or (checksum.toLong() and 0xFFFFFFFFL)
+
+    private fun lengthOf(key: Long): Int = RECORD_HEADER_BYTES + (records.get(key) ushr 32).toInt() * ENTRY_BYTES
+
+    private fun checksumOf(
+        buffer: ByteBuffer,
+        offset: Int,
+        length: Int,
+    ): Int {
+        crc.reset()
+        crc.update(buffer.duplicate().limit(offset + length).position(offset))
+        return crc.value.toInt()
+    }
+
+    // 記録の本体を scratch に読み込む。ファイルが途中で終わっていれば null
+    private fun readBody(
+        channel: FileChannel,
+        offset: Long,
+        count: Int,
+    ): ByteBuffer? {
+        val length = count * ENTRY_BYTES
+        if (scratch.capacity() < length) scratch = ByteBuffer.allocate(maxOf(length, scratch.capacity() * 2))
+        val body = scratch.clear().limit(length)
+        if (!readFully(channel, body, offset + RECORD_HEADER_BYTES)) return null
+        return body.flip()
+    }
+
+    /**
+     * チャンクの記録を読み出します。記録がない場合は null を返します。
+     */
+    fun get(key: Long): Long2IntOpenHashMap? {
+        val location = locations.get(key)
+        if (location == NO_LOCATION) return null
+        return decode(key, location)
+    }
+
+    /**
+     * 中心のチャンクから radius チャンク以内の記録をすべて読み出します。
+     */
+    inline fun forEachWithin(
+        centerX: Int,
+        centerZ: Int,
+        radius: Int,
+        action: (key: Long, positions: Long2IntOpenHashMap) -> Unit,
+    ) {
+        for (key in keysWithin(centerX, centerZ, radius)) {
+            action(key, get(key) ?: continue)
+        }
+    }
+
+    @PublishedApi
+    internal fun keysWithin(
+        centerX: Int,
+        centerZ: Int,
+        radius: Int,
+    ): LongArray {
+        val keys = LongArray(locations.size)
+        var count = 0
+        val iterator = locations.keys.iterator()
+        while (iterator.hasNext()) {
+            val key = iterator.nextLong()
+            if (abs(ChunkPos.getPackedX(key) - centerX) > radius) continue
+            if (abs(ChunkPos.getPackedZ(key) - centerZ) > radius) continue
+            keys[count++] = key
+        }
+        return keys.copyOf(count)
+    }
+
+    private fun decode(
+        key: Long,
+        location: Long,
+    ): Long2IntOpenHashMap {
+        val count = (records.get(key) ushr 32).toInt()
+        val buffer =
+            readBody(segmentOf(location).channel, location and 0xFFFFFFFFL, count)
+                ?: throw IllegalStateException("チャンク $key の記録が途中で途切れています。")
+        val baseX = ChunkPos.getPackedX(key) shl 4
+        val baseZ = ChunkPos.getPackedZ(key) shl 4
+        val positions = Long2IntOpenHashMap(count)
+        var position = 0
+        repeat(count) {
+            val entry = buffer.getLong(position)
+            val local = (entry shr 32).toInt()
+            positions.put(BlockPos.asLong(baseX + (local and 15), local shr 8, baseZ + ((local shr 4) and 15)), entry.toInt())
+            position += ENTRY_BYTES
+        }
+        return positions
+    }
+
+    /**
+     * チャンクの記録を追記します。保存済みの記録と同じ内容の場合は何もしません。
+     * positions が空の場合は、保存済みの記録があるときだけ削除の記録を追記します。
+     */
+    fun put(
+        key: Long,
+        positions: Long2IntOpenHashMap,
+    ) {
+        val count = positions.size
+        val previous = locations.get(key)
+        if (count == 0 && previous == NO_LOCATION) return
+
+        // 並び順を固定して、同じ内容なら同じ CRC32 になるようにする
+        val entries = LongArray(count)
+        var index = 0
+        val iterator = positions.long2IntEntrySet().fastIterator()
+        while (iterator.hasNext()) {
+            val entry = iterator.next()
+            entries[index++] = (localOf(entry.longKey).toLong() shl 32) or (entry.intValue.toLong() and 0xFFFFFFFFL)
+        }
+        entries.sort()
+
+        val length = RECORD_HEADER_BYTES + count * ENTRY_BYTES
+        if (scratch.capacity() < length) scratch = ByteBuffer.allocate(maxOf(length, scratch.capacity() * 2))
+        val buffer = scratch.clear()
+        buffer.position(RECORD_HEADER_BYTES)
+        for (entry in entries) buffer.putLong(entry)
+        val checksum = checksumOf(buffer, RECORD_HEADER_BYTES, count * ENTRY_BYTES)
+        if (previous != NO_LOCATION && records.get(key) == recordOf(count, checksum)) return
+        buffer.putLong(0, key).putInt(8, count).putInt(12, checksum)
+        buffer.limit(length).position(0)
+
+        if (active.size >= SEGMENT_BYTES) active = createSegment(0)
+        val offset = active.size
+        writeFully(active.channel, buffer, offset)
+        active.size += length
+        totalBytes += length
+        apply(key, count, checksum, (active.id.toLong() shl 32) or offset, length)
+        if (shouldCompact()) compact()
+    }
+
+    private fun shouldCompact(): Boolean = totalBytes >= COMPACT_MIN_BYTES && liveBytes * 2 < totalBytes
+
+    // 有効な記録だけを新しいベースセグメントにコピーし、古いセグメントを削除する
+    private fun compact() {
+        val id = nextId++
+        val path = directory.resolve("segment-$id.bin")
+        val temporary = directory.resolve("segment-$id.bin.tmp")
+        val moved = Long2LongOpenHashMap(locations.size).apply { defaultReturnValue(NO_LOCATION) }
+        FileChannel
+            .open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)
+            .use { channel ->
+                writeFully(channel, header(FLAG_BASE), 0)
+                var offset = HEADER_BYTES.toLong()
+                val iterator = locations.long2LongEntrySet().fastIterator()
+                while (iterator.hasNext()) {
+                    val entry = iterator.next()
+                    val location = entry.longValue
+                    val length = lengthOf(entry.longKey)
+                    // ヒープを経由せず、ファイルからファイルへ直接コピーする
+                    channel.position(offset)
+                    transferFully(segmentOf(location).channel, location and 0xFFFFFFFFL, length.toLong(), channel)
+                    moved.put(entry.longKey, (id.toLong() shl 32) or offset)
+                    offset += length
+                }
+                channel.force(true)
+            }
+        // 名前を変えた時点で、次に開いたときにはこのセグメントより前が無視される
+        Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING)
+
+        val previous = segments.values.toList()
+        segments.clear()
+        for (segment in previous) {
+            segment.release()
+            try {
+                Files.deleteIfExists(segment.path)
+            } catch (_: Exception) {
+                // 削除できない場合も、ベースセグメントより前なので次に開いたときに削除される
+            }
+        }
+        val channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)
+        val segment = Segment(id, path, channel, channel.size())
+        segments.put(id, segment)
+        active = segment
+        locations.clear()
+        locations.putAll(moved)
+        totalBytes = segment.size
+        liveBytes = segment.size - HEADER_BYTES
+    }
+
+    private fun readHeader(channel: FileChannel): ByteBuffer {
+        val buffer = ByteBuffer.allocate(HEADER_BYTES)
+        readFully(channel, buffer, 0)
+        return buffer
+    }
+
+    // buffer の残りをすべて読み込む。ファイルの終わりに達したら false
+    private fun readFully(
+        channel: FileChannel,
+        buffer: ByteBuffer,
+        position: Long,
+    ): Boolean {
+        var read = position
+        while (buffer.hasRemaining()) {
+            val count = channel.read(buffer, read)
+            if (count < 0) return false
+            read += count
+        }
+        return true
+    }
+
+    private fun transferFully(
+        source: FileChannel,
+        position: Long,
+        length: Long,
+        target: FileChannel,
+    ) {
+        var transferred = 0L
+        while (transferred < length) {
+            val count = source.transferTo(position + transferred, length - transferred, target)
+            if (count <= 0) throw IllegalStateException("セグメントのコピーが途中で終わりました。")
+            transferred += count
+        }
+    }
+
+    private fun deleteQuietly(path: Path) {
+        try {
+            Files.deleteIfExists(path)
+        } catch (_: Exception) {
+            // 削除できなくても、ベースセグメントより前のものや互換性のないものは次に開いたときにまた削除を試みる
+        }
+    }
+
+    private fun writeFully(
+        channel: FileChannel,
+        buffer: ByteBuffer,
+        position: Long,
+    ) {
+        var written = position
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer, written)
+        }
+    }
+
+    override fun close() {
+        try {
+            active.channel.force(false)
+        } finally {
+            for (segment in segments.values) segment.release()
+            segments.clear()
+        }
+    }
+}
@@ -0,0 +1,648 @@
+package org.theinfinitys.features.rendering
+
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap
+import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientChunkEvents
+import net.minecraft.block.Block
+import net.minecraft.block.BlockState
+import net.minecraft.client.MinecraftClient
+import net.minecraft.client.world.ClientWorld
+import net.minecraft.util.Util
+import net.minecraft.util.math.BlockPos
+import net.minecraft.util.math.ChunkPos
+import net.minecraft.util.math.ChunkSectionPos
+import net.minecraft.util.math.Direction
+import net.minecraft.world.chunk.PalettedContainer
+import net.minecraft.world.chunk.WorldChunk
+import org.theinfinitys.ConfigManager
+import org.theinfinitys.InfiniteClient
+import org.theinfinitys.SectionRebuildScheduler
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Executors
+
+/**
+ * XRay の対象ブロックの位置をチャンクごとに保持するインデックス。
+ * 対象は XRayBlockTable.isIndexed のブロック（ExposedBlockList のうち流体を除いたもの）だけで、水や溶岩、透過するだけのブロックは含みません。
+ *
+ * チャンクが読み込まれると、クライアントスレッドでパレットを調べて対象ブロックを含むセクションだけをコピーし、
+ * バックグラウンドのスレッドで位置を走査します。以降はブロック更新パケットごとに差分だけを反映し、再走査はしません。
+ * 各チャンクのインデックスは公開後に変更されない（更新時はコピーして差し替える）ため、クライアントスレッドからロックなしで問い合わせできます。
+ *
+ * ExposedBlockList のブロックを含むセクションについては、各ブロックが空気または流体に接しているかを
+ * 4096ビットのマスクとして同時に作成します。OnlyExposed モードではチャンクビルダーのスレッドから isExposed() で参照されます。
+ *
+ * 走査の結果は XRayIndexStore にサーバーとディメンションごとに保存します。ブロック更新による変更は毎回は書き込まず、
+ * チャンクが破棄されたとき、保存先を切り替えるとき、または FLUSH_INTERVAL_MILLIS ごとにまとめて書き込みます。ワールドに入ったときは、
+ * 周囲の保存済みの記録をすぐに公開し、チャンクが読み込まれて走査が終わったものから置き換えます。
+ * 保存済みの記録には露出マスクがないため、OnlyExposed モードでは隣接ブロックを参照して判定されます。
+ */
+object XRayOreIndex {
+    /**
+     * 一つのチャンクのインデックス。パックしたブロック座標からブロックステートの生IDへの対応と、セクションごとの露出マスクを保持する。
+     */
+    class ChunkIndex internal constructor(
+        internal val positions: Long2IntOpenHashMap,
+        // セクションのインデックス（最下段が0）ごとの露出マスク。null のセクションは判定できない
+        internal val masks: Array<LongArray?>,
+        internal val bottomSectionCoord: Int,
+    ) {
+        // 新しいインデックスに差し替えられたかどうか。スレッドごとの参照キャッシュの無効化に使う
+        @Volatile
+        internal var superseded = false
+
+        val size: Int get() = positions.size
+    }
+
+    // チャンクビルダーのスレッドごとに直前に参照したチャンクを覚えておき、Long のボックス化を伴う検索を避ける
+    private class LookupCache {
+        var key = 0L
+        var index: ChunkIndex? = null
+    }
+
+    private val executor =
+        Executors.newSingleThreadExecutor { runnable ->
+            Thread(runnable, "Infinite XRay Indexer").apply { isDaemon = true }
+        }
+
+    // ChunkPos.toLong をキーとするチャンクごとのインデックス
+    private val chunks = ConcurrentHashMap<Long, ChunkIndex>()
+    private val lookupCache = ThreadLocal.withInitial { LookupCache() }
+    private val directions = Direction.values()
+
+    // 保存済みの記録を公開する範囲。描画距離にこのチャンク数を加える
+    private const val RESTORE_MARGIN = 8
+
+    // 索引対象の判定表。null の間はインデックスを作成しない
+    @Volatile
+    private var table: XRayBlockTable? = null
+
+    // start()/stop() のたびに進め、古い世代の走査結果を捨てる
+    @Volatile
+    private var generation = 0
+
+    private var currentWorld: ClientWorld? = null
+    private var installed = false
+
+    // 現在のワールドの保存先。走査スレッドからのみ参照する
+    private var store: XRayIndexStore? = null
+
+    // ブロック更新で変わったが、まだ保存していないチャンクの位置。走査スレッドからのみ参照する
+    private val unsaved = Long2ObjectOpenHashMap<Long2IntOpenHashMap>()
+    private var lastFlush = 0L
+    private const val FLUSH_INTERVAL_MILLIS = 30_000L
+
+    /**
+     * チャンクの読み込み・破棄のイベントを登録します。
+     */
+    fun install() {
+        if (installed) return
+        installed = true
+        ClientChunkEvents.CHUNK_LOAD.register { world, chunk -> onChunkLoad(world, chunk) }
+        ClientChunkEvents.CHUNK_UNLOAD.register { _, chunk -> onChunkUnload(chunk) }
+    }
+
+    /**
+     * 判定表を設定し、読み込み済みのチャンクを索引し直します。クライアントスレッドから呼び出してください。
+     */
+    fun start(blockTable: XRayBlockTable) {
+        table = blockTable
+        reset()
+        val client = MinecraftClient.getInstance()
+        val world = client.world ?: return
+        val player = client.player ?: return
+        currentWorld = world
+        switchStore(world)
+        val radius = client.options.clampedViewDistance
+        val center = player.chunkPos
+        for (chunkX in center.x - radius..center.x + radius) {
+            for (chunkZ in center.z - radius..center.z + radius) {
+                if (!world.chunkManager.isChunkLoaded(chunkX, chunkZ)) continue
+                index(world, world.getChunk(chunkX, chunkZ), blockTable)
+            }
+        }
+    }
+
+    fun stop() {
+        table = null
+        reset()
+        currentWorld = null
+        switchStore(null)
+    }
+
+    /**
+     * インデックスだけを破棄します。判定表は保持するため、次に読み込まれたチャンクから再び索引されます。
+     */
+    fun clear() {
+        reset()
+        currentWorld = null
+        switchStore(null)
+    }
+
+    private fun reset() {
+        generation++
+        for (index in chunks.values) index.superseded = true
+        chunks.clear()
+    }
+
+    // バックグラウンドのスレッドからのみ呼び出す
+    private fun publish(
+        key: Long,
+        index: ChunkIndex?,
+    ) {
+        val previous = if (index == null) chunks.remove(key) else chunks.put(key, index)
+        previous?.superseded = true
+    }
+
+    // ワールドに対応する保存先を開き直し、周囲の保存済みの記録を公開する。ファイルの操作は走査スレッドで行う
+    private fun switchStore(world: ClientWorld?) {
+        val client = MinecraftClient.getInstance()
+        val directory =
+            world?.let {
+                val dimension = it.registryKey.value
+                ConfigManager.getConfigDirectory().resolve("xray").resolve(dimension.namespace).resolve(dimension.path)
+            }
+        val player = client.player
+        val centerX = player?.chunkPos?.x ?: 0
+        val centerZ = player?.chunkPos?.z ?: 0
+        val radius = client.options.clampedViewDistance + RESTORE_MARGIN
+        val sectionCount = world?.countVerticalSections() ?: 0
+        val bottomSectionCoord = world?.bottomSectionCoord ?: 0
+        val expected = generation
+        submit {
+            flush()
+            val previous = store
+            store = null
+            previous?.close()
+            if (directory == null) return@submit
+            val opened = XRayIndexStore.open(directory, Block.STATE_IDS.size())
+            store = opened
+            if (player == null) return@submit
+            opened.forEachWithin(centerX, centerZ, radius) { key, positions ->
+                val blockTable = table ?: return@submit
+                if (generation != expected) return@submit
+                // 保存後に判定表が変わっている場合がある
+                val iterator = positions.long2IntEntrySet().fastIterator()
+                while (iterator.hasNext()) {
+                    if (!blockTable.isIndexed(Block.getStateFromRawId(iterator.next().intValue))) iterator.remove()
+                }
+                if (positions.isEmpty() || chunks.containsKey(key)) return@forEachWithin
+                publish(key, ChunkIndex(positions, arrayOfNulls(sectionCount), bottomSectionCoord))
+            }
+        }
+    }
+
+    private fun onChunkLoad(
+        world: ClientWorld,
+        chunk: WorldChunk,
+    ) {
+        val blockTable = table ?: return
+        if (world !== currentWorld) {
+            // ディメンションの移動やサーバーの切り替えで別のワールドになった
+            currentWorld = world
+            reset()
+            switchStore(world)
+        }
+        index(world, chunk, blockTable)
+        // 以前の走査時に読み込まれていた隣接チャンクの内容は当てにならないため、境界のブロックを露出扱いに戻す
+        val chunkX = chunk.pos.x
+        val chunkZ = chunk.pos.z
+        val expected = generation
+        submit {
+            if (generation != expected) return@submit
+            markBoundaryExposed(ChunkPos.toLong(chunkX - 1, chunkZ), Direction.EAST)
+            markBoundaryExposed(ChunkPos.toLong(chunkX + 1, chunkZ), Direction.WEST)
+            markBoundaryExposed(ChunkPos.toLong(chunkX, chunkZ - 1), Direction.SOUTH)
+            markBoundaryExposed(ChunkPos.toLong(chunkX, chunkZ + 1), Direction.NORTH)
+        }
+    }
+
+    private fun onChunkUnload(chunk: WorldChunk) {
+        if (table == null) return
+        val key = chunk.pos.toLong()
+        val expected = generation
+        submit {
+            save(key)
+            if (generation == expected) publish(key, null)
+        }
+    }
+
+    private class SectionScan(
+        val sectionIndex: Int,
+        val container: PalettedContainer<BlockState>,
+        // Direction.ordinal 順の隣接セクション。露出マスクを作らないセクションでは null
+        val neighbors: Array<PalettedContainer<BlockState>?>?,
+    )
+
+    // パレットに対象のステートを含むセクションだけをコピーし、走査はバックグラウンドで行う
+    private fun index(
+        world: ClientWorld,
+        chunk: WorldChunk,
+        blockTable: XRayBlockTable,
+    ) {
+        val key = chunk.pos.toLong()
+        val sectionArray = chunk.sectionArray
+        val bottomSectionCoord = chunk.bottomSectionCoord
+        val copies = HashMap<Long, PalettedContainer<BlockState>?>()
+
+        // 隣接セクションのコピー。同じセクションを複数回コピーしない。未読み込みやワールドの範囲外は null
+        fun copyOf(
+            chunkX: Int,
+            sectionIndex: Int,
+            chunkZ: Int,
+        ): PalettedContainer<BlockState>? {
+            if (sectionIndex < 0 || sectionIndex >= sectionArray.size) return null
+            val sectionKey = ChunkSectionPos.asLong(chunkX, sectionIndex, chunkZ)
+            if (copies.containsKey(sectionKey)) return copies[sectionKey]
+            val source =
+                when {
+                    chunkX == chunk.pos.x && chunkZ == chunk.pos.z -> chunk
+                    world.chunkManager.isChunkLoaded(chunkX, chunkZ) -> world.getChunk(chunkX, chunkZ)
+                    else -> null
+                }
+            val copy = source?.sectionArray?.getOrNull(sectionIndex)?.blockStateContainer?.copy()
+            copies[sectionKey] = copy
+            return copy
+        }
+
+        val scans = ArrayList<SectionScan>()
+        for ((index, section) in sectionArray.withIndex()) {
+            if (section.isEmpty || !section.hasAny { blockTable.isIndexed(it) }) continue
+            val container = copyOf(chunk.pos.x, index, chunk.pos.z) ?: continue
+            // ThroughBlockList のブロックは常に描画されるため、露出の判定が必要なのは ExposedBlockList だけのブロック
+            val needsMask = section.hasAny { blockTable.isExposed(it) && !blockTable.isThrough(it) }
+            val neighbors =
+                if (needsMask) {
+                    Array(directions.size) { i ->
+                        val direction = directions[i]
+                        copyOf(chunk.pos.x + direction.offsetX, index + direction.offsetY, chunk.pos.z + direction.offsetZ)
+                    }
+                } else {
+                    null
+                }
+            scans.add(SectionScan(index, container, neighbors))
+        }
+        val baseX = chunk.pos.startX
+        val baseZ = chunk.pos.startZ
+        val sectionCount = sectionArray.size
+        val expected = generation
+        submit {
+            if (generation != expected) return@submit
+            if (scans.isEmpty()) {
+                publish(key, null)
+                unsaved.remove(key)
+                store?.put(key, Long2IntOpenHashMap())
+                return@submit
+            }
+            val positions = Long2IntOpenHashMap()
+            val masks = arrayOfNulls<LongArray>(sectionCount)
+            for (scan in scans) {
+                val container = scan.container
+                val minY = (bottomSectionCoord + scan.sectionIndex) shl 4
+                val mask = if (scan.neighbors != null) LongArray(64) else null
+                for (y in 0 until 16) {
+                    for (z in 0 until 16) {
+                        for (x in 0 until 16) {
+                            val state = container.get(x, y, z)
+                            if (!blockTable.isIndexed(state)) continue
+                            positions.put(BlockPos.asLong(baseX + x, minY + y, baseZ + z), Block.getRawIdFromState(state))
+                            if (mask != null && blockTable.isExposed(state) && isExposedIn(scan, x, y, z)) {
+                                setBit(mask, maskBit(x, y, z))
+                            }
+                        }
+                    }
+                }
+                masks[scan.sectionIndex] = mask
+            }
+            if (generation == expected) {
+                publish(key, ChunkIndex(positions, masks, bottomSectionCoord))
+                unsaved.remove(key)
+                store?.put(key, positions)
+            }
+        }
+    }
+
+    /**
+     * ブロック更新パケットの適用後に呼び出され、インデックスに差分を反映します。
+     * 変更されたブロックと隣接する6ブロックの露出もクライアントスレッドで判定し直し、マスクに反映します。
+     */
+    fun onBlockUpdate(
+        world: ClientWorld,
+        pos: BlockPos,
+        state: BlockState,
+    ) {
+        val blockTable = table ?: return
+        val key = ChunkPos.toLong(pos.x shr 4, pos.z shr 4)
+        val packed = pos.asLong()
+        val target = blockTable.isIndexed(state)
+        val rawId = Block.getRawIdFromState(state)
+
+        val exposurePositions = LongArray(directions.size + 1)
+        val exposureValues = BooleanArray(directions.size + 1)
+        var exposureCount = 0
+        for (i in -1 until directions.size) {
+            val blockPos = if (i < 0) pos else pos.offset(directions[i])
+            val blockState = if (i < 0) state else world.getBlockState(blockPos)
+            if (!blockTable.isExposed(blockState)) continue
+            exposurePositions[exposureCount] = blockPos.asLong()
+            exposureValues[exposureCount] = directions.any { isOpen(world.getBlockState(blockPos.offset(it))) }
+            exposureCount++
+        }
+
+        val expected = generation
+        submit {
+            if (generation != expected) return@submit
+            updatePosition(key, packed, target, rawId)
+            for (i in 0 until exposureCount) {
+                patchExposure(exposurePositions[i], exposureValues[i])
+            }
+        }
+    }
+
+    private fun updatePosition(
+        key: Long,
+        packed: Long,
+        target: Boolean,
+        rawId: Int,
+    ) {
+        val current = chunks[key]
+        if (current == null && !target) return
+        if (current != null && !target && !current.positions.containsKey(packed)) return
+        if (current != null && target && current.positions.containsKey(packed) && current.positions.get(packed) == rawId) return
+        val positions = if (current != null) Long2IntOpenHashMap(current.positions) else Long2IntOpenHashMap()
+        if (target) positions.put(packed, rawId) else positions.remove(packed)
+        // 採掘や設置のたびにチャンク全体の記録を追記しないよう、保存は後でまとめて行う
+        unsaved.put(key, positions)
+        if (Util.getMeasuringTimeMs() - lastFlush >= FLUSH_INTERVAL_MILLIS) flush()
+        when {
+            positions.isEmpty() -> publish(key, null)
+            current != null -> publish(key, ChunkIndex(positions, current.masks, current.bottomSectionCoord))
+            else -> {
+                // 対象ブロックがなかったチャンク。マスクは作らず、露出の判定は隣接ブロックの参照で行う
+                val world = currentWorld ?: return
+                publish(key, ChunkIndex(positions, arrayOfNulls(world.countVerticalSections()), world.bottomSectionCoord))
+            }
+        }
+    }
+
+    // 走査スレッドからのみ呼び出す
+    private fun save(key: Long) {
+        val positions = unsaved.remove(key) ?: return
+        store?.put(key, positions)
+    }
+
+    // 走査スレッドからのみ呼び出す
+    private fun flush() {
+        lastFlush = Util.getMeasuringTimeMs()
+        if (unsaved.isEmpty()) return
+        val current = store
+        if (current != null) {
+            val iterator = unsaved.long2ObjectEntrySet().fastIterator()
+            while (iterator.hasNext()) {
+                val entry = iterator.next()
+                current.put(entry.longKey, entry.value)
+            }
+        }
+        unsaved.clear()
+    }
+
+    private fun patchExposure(
+        packed: Long,
+        exposed: Boolean,
+    ) {
+        val x = BlockPos.unpackLongX(packed)
+        val y = BlockPos.unpackLongY(packed)
+        val z = BlockPos.unpackLongZ(packed)
+        val key = ChunkPos.toLong(x shr 4, z shr 4)
+        val current = chunks[key] ?: return
+        val sectionIndex = (y shr 4) - current.bottomSectionCoord
+        val mask = current.masks.getOrNull(sectionIndex) ?: return
+        val bit = maskBit(x and 15, y and 15, z and 15)
+        if (testBit(mask, bit) == exposed) return
+        val newMask = mask.copyOf()
+        if (exposed) setBit(newMask, bit) else clearBit(newMask, bit)
+        val masks = current.masks.copyOf()
+        masks[sectionIndex] = newMask
+        publish(key, ChunkIndex(current.positions, masks, current.bottomSectionCoord))
+        // 露出していない扱いで構築済みのメッシュがあれば、面が欠けたままになるため作り直す
+        if (exposed) requestRebuild(x, y, z)
+    }
+
+    // side の方向の境界に接するブロックをすべて露出扱いにする
+    private fun markBoundaryExposed(
+        key: Long,
+        side: Direction,
+    ) {
+        val current = chunks[key] ?: return
+        var masks: Array<LongArray?>? = null
+        val iterator = current.positions.long2IntEntrySet().fastIterator()
+        while (iterator.hasNext()) {
+            val packed = iterator.next().longKey
+            val x = BlockPos.unpackLongX(packed)
+            val y = BlockPos.unpackLongY(packed)
+            val z = BlockPos.unpackLongZ(packed)
+            val onBoundary =
+                when (side) {
+                    Direction.EAST -> x and 15 == 15
+                    Direction.WEST -> x and 15 == 0
+                    Direction.SOUTH -> z and 15 == 15
+                    Direction.NORTH -> z and 15 == 0
+                    else -> false
+                }
+            if (!onBoundary) continue
+            val sectionIndex = (y shr 4) - current.bottomSectionCoord
+            val bit = maskBit(x and 15, y and 15, z and 15)
+            val original = current.masks.getOrNull(sectionIndex) ?: continue
+            var writable = masks
+            if (writable == null) {
+                if (testBit(original, bit)) continue
+                writable = current.masks.copyOf()
+                masks = writable
+            }
+            // 同じセクションのマスクは一度だけコピーする
+            var mask = writable[sectionIndex] ?: continue
+            if (testBit(mask, bit)) continue
+            if (mask === original) {
+                mask = original.copyOf()
+                writable[sectionIndex] = mask
+            }
+            setBit(mask, bit)
+            requestRebuild(x, y, z)
+        }
+        val patched = masks ?: return
+        publish(key, ChunkIndex(current.positions, patched, current.bottomSectionCoord))
+    }
+
+    private fun requestRebuild(
+        x: Int,
+        y: Int,
+        z: Int,
+    ) {
+        MinecraftClient.getInstance().execute { SectionRebuildScheduler.requestSectionAt(x, y, z) }
+    }
+
+    private fun isExposedIn(
+        scan: SectionScan,
+        x: Int,
+        y: Int,
+        z: Int,
+    ): Boolean {
+        val neighbors = scan.neighbors ?: return true
+        for (direction in directions) {
+            val nx = x + direction.offsetX
+            val ny = y + direction.offsetY
+            val nz = z + direction.offsetZ
+            val state =
+                if (nx in 0..15 && ny in 0..15 && nz in 0..15) {
+                    scan.container.get(nx, ny, nz)
+                } else {
+                    // 未読み込みのチャンクやワールドの範囲外は露出しているものとして扱う
+                    val neighbor = neighbors[direction.ordinal] ?: return true
+                    neighbor.get(nx and 15, ny and 15, nz and 15)
+                }
+            if (isOpen(state)) return true
+        }
+        return false
+    }
+
+    /**
+     * 空気または流体に接している面は見えるものとして扱います。
+     */
+    fun isOpen(state: BlockState): Boolean = state.isAir || !state.fluidState.isEmpty
+
+    private fun maskBit(
+        x: Int,
+        y: Int,
+        z: Int,
+    ): Int = (y shl 8) or (z shl 4) or x
+
+    private fun testBit(
+        mask: LongArray,
+        bit: Int,
+    ): Boolean = mask[bit ushr 6] and (1L shl bit) != 0L
+
+    private fun setBit(
+        mask: LongArray,
+        bit: Int,
+    ) {
+        mask[bit ushr 6] = mask[bit ushr 6] or (1L shl bit)
+    }
+
+    private fun clearBit(
+        mask: LongArray,
+        bit: Int,
+    ) {
+        mask[bit ushr 6] = mask[bit ushr 6] and (1L shl bit).inv()
+    }
+
+    private fun lookup(key: Long): ChunkIndex? {
+        val cache = lookupCache.get()
+        val cached = cache.index
+        if (cached != null && cache.key == key && !cached.superseded) return cached
+        val index = chunks[key]
+        cache.key = key
+        cache.index = index
+        return index
+    }
+
+    /**
+     * 指定位置のブロックが空気または流体に接しているかを返します。マスクのないセクションでは null を返すため、隣接ブロックを参照して判定してください。
+     * チャンクビルダーのスレッドから呼び出されます。
+     */
+    fun isExposed(pos: BlockPos): Boolean? {
+        if (table == null) return null
+        val index = lookup(ChunkPos.toLong(pos.x shr 4, pos.z shr 4)) ?: return null
+        val mask = index.masks.getOrNull((pos.y shr 4) - index.bottomSectionCoord) ?: return null
+        return testBit(mask, maskBit(pos.x and 15, pos.y and 15, pos.z and 15))
+    }
+
+    /**
+     * 指定したチャンクのインデックスを返します。内容が変わるたびに別のインスタンスに差し替わるため、参照の比較で変更を検出できます。
+     */
+    fun chunkIndex(
+        chunkX: Int,
+        chunkZ: Int,
+    ): ChunkIndex? = chunks[ChunkPos.toLong(chunkX, chunkZ)]
+
+    /**
+     * 指定位置から半径 radius ブロック以内で最も近い対象ブロックの位置を返します。block が null の場合はすべての対象ブロックが候補です。
+     */
+    fun nearest(
+        origin: BlockPos,
+        radius: Int,
+        block: Block?,
+    ): BlockPos? {
+        var best = Long.MIN_VALUE
+        var bestDistance = radius.toLong() * radius
+        forEachWithin(origin, radius) { packed, rawId, distanceSq ->
+            if (distanceSq <= bestDistance && (block == null || Block.getStateFromRawId(rawId).block == block)) {
+                best = packed
+                bestDistance = distanceSq
+            }
+        }
+        return if (best == Long.MIN_VALUE) null else BlockPos.fromLong(best)
+    }
+
+    /**
+     * 指定位置から半径 radius ブロック以内の対象ブロックの数を、ブロックごとに多い順で返します。
+     */
+    fun countWithin(
+        origin: BlockPos,
+        radius: Int,
+    ): List<Pair<Block, Int>> {
+        val counts = Object2IntOpenHashMap<Block>()
+        forEachWithin(origin, radius) { _, rawId, _ ->
+            counts.addTo(Block.getStateFromRawId(rawId).block, 1)
+        }
+        return counts.object2IntEntrySet().map { it.key to it.intValue }.sortedByDescending { it.second }
+    }
+
+    /**
+     * 索引済みのチャンク数と対象ブロックの総数を返します。
+     */
+    fun stats(): Pair<Int, Int> {
+        var total = 0
+        for (index in chunks.values) total += index.size
+        return chunks.size to total
+    }
+
+    private inline fun forEachWithin(
+        origin: BlockPos,
+        radius: Int,
+        action: (packed: Long, rawId: Int, distanceSq: Long) -> Unit,
+    ) {
+        val radiusSq = radius.toLong() * radius
+        val minChunkX = (origin.x - radius) shr 4
+        val maxChunkX = (origin.x + radius) shr 4
+        val minChunkZ = (origin.z - radius) shr 4
+        val maxChunkZ = (origin.z + radius) shr 4
+        for (chunkX in minChunkX..maxChunkX) {
+            for (chunkZ in minChunkZ..maxChunkZ) {
+                val index = chunks[ChunkPos.toLong(chunkX, chunkZ)] ?: continue
+                val iterator = index.positions.long2IntEntrySet().fastIterator()
+                while (iterator.hasNext()) {
+                    val entry = iterator.next()
+                    val packed = entry.longKey
+                    val dx = (BlockPos.unpackLongX(packed) - origin.x).toLong()
+                    val dy = (BlockPos.unpackLongY(packed) - origin.y).toLong()
+                    val dz = (BlockPos.unpackLongZ(packed) - origin.z).toLong()
+                    val distanceSq = dx * dx + dy * dy + dz * dz
+                    if (distanceSq <= radiusSq) action(packed, entry.intValue, distanceSq)
+                }
+            }
+        }
+    }
+
+    // 走査スレッドの例外はスレッドごと失われるため、クライアントスレッドで報告する
+    private fun submit(task: () -> Unit) {
+        executor.execute {
+            try {
+                task()
+            } catch (e: Exception) {
+                MinecraftClient.getInstance().execute {
+                    InfiniteClient.error("XRayインデックスの更新に失敗しました: ${e.message}")
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package org.theinfinitys.features.rendering
+
+import net.minecraft.registry.RegistryKey
+import net.minecraft.world.World
+
+/**
+ * ディメンションごとの XRay のブロックリスト。ワールドが切り替わると XRay が自動で切り替えます。
+ * Overworld は ThroughBlockList/ExposedBlockList を使い、Nether と End 以外のディメンションでも使われます。
+ */
+enum class XRayProfile(
+    val throughSetting: String,
+    val exposedSetting: String,
+) {
+    Overworld("ThroughBlockList", "ExposedBlockList"),
+    Nether("NetherThroughBlockList", "NetherExposedBlockList"),
+    End("EndThroughBlockList", "EndExposedBlockList"),
+    ;
+
+    companion object {
+        fun of(dimension: RegistryKey<World>?): XRayProfile =
+            when (dimension) {
+                World.NETHER -> Nether
+                World.END -> End
+                else -> Overworld
+            }
+    }
+}
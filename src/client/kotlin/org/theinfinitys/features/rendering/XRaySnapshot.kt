@@ -0,0 +1,19 @@
+package org.theinfinitys.features.rendering
+
+/**
+ * チャンクビルダーのスレッドが参照する XRay の設定のスナップショット。
+ *
+ * 設定のリストは GUI やコマンドからクライアントスレッドで直接変更されるため、ワーカーからは参照せず、
+ * 変更のたびにクライアントスレッドで作成したこの不変のオブジェクトを XRay.snapshot() 経由で読み取ります。
+ * 一回の判定の中では同じスナップショットを使い続けるため、判定表とモードの組み合わせが途中で変わることはありません。
+ */
+class XRaySnapshot(
+    // 公開のたびに増える番号。キャッシュが古いスナップショットに基づくものかを判別するために使う
+    val version: Int,
+    val table: XRayBlockTable,
+    val mode: XRayMode,
+    // Translucent モードで対象外のブロックに使う不透明度（0〜255）
+    val opacity: Int,
+    // Translucent モードで対象外のブロックを半透明にする、カメラからの半径（ブロック）
+    val translucentRadius: Int,
+)
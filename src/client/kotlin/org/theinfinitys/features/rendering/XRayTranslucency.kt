@@ -0,0 +1,283 @@
+package org.theinfinitys.features.rendering
+
+import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientTickEvents
+import net.fabricmc.loader.api.FabricLoader
+import net.minecraft.block.BlockState
+import net.minecraft.client.MinecraftClient
+import net.minecraft.client.render.BlockRenderLayer
+import net.minecraft.client.render.VertexConsumer
+import net.minecraft.util.math.ChunkSectionPos
+import org.theinfinitys.FeatureFlags
+import org.theinfinitys.FeatureRegistry
+import org.theinfinitys.InfiniteClient
+import org.theinfinitys.InfiniteMixinPlugin
+import org.theinfinitys.SectionRebuildScheduler
+
+/**
+ * XRay の Translucent モードで、対象外のブロックを半透明で描画するための補助。
+ *
+ * 半透明のブロックはカメラからの距離で並べ替えが必要になるため、カメラから TranslucentRadius 以内のセクションだけを
+ * 半透明のレイヤーに振り分けます。それより遠いセクションでは、対象外のブロックはこれまでどおり描画されません。
+ * 対象ブロックは元のレイヤーのまま描画されるため、並べ替えの対象になりません。
+ *
+ * チャンクビルダーのスレッドは、セクションの構築の開始時に XRay のスナップショットとカメラのセクション座標を読み、
+ * スレッドごとの SectionContext に保持します。構築中に設定が変わっても、そのセクションの判定は変わりません。
+ *
+ * Indigo はセクションの構築で BlockModelRenderer を通らないため、頂点の不透明度は XRayIndigoTerrainMixin で書き換えます。
+ * このフックは Indigo の内部実装に依存するため、注入されなかった場合は isSupported が false を返し、XRay は Normal モードで描画します。
+ */
+object XRayTranslucency {
+    private const val INDIGO_MOD_ID = "fabric-renderer-indigo"
+    private const val INDIGO_TERRAIN_CONTEXT = "net.fabricmc.fabric.impl.client.indigo.renderer.render.TerrainRenderContext"
+
+    private val XRAY = FeatureRegistry.handle(XRay::class.java)
+
+    // isSupported の結果。一度だけ判定する
+    private var supported: Boolean? = null
+
+    // 構築中のセクションの情報。チャンクビルダーのスレッドごとに一つ
+    private class SectionContext {
+        var active = false
+        var near = false
+        var alpha = 255
+        var table: XRayBlockTable = XRayBlockTable.EMPTY
+
+        // 直前に getBlockLayer で半透明に振り分けたブロックかどうか。Indigo の頂点の出力先を差し替えるかの判定に使う
+        var currentGhost = false
+        val consumer = AlphaVertexConsumer()
+    }
+
+    private val contexts = ThreadLocal.withInitial { SectionContext() }
+
+    // カメラのいるセクション（ChunkSectionPos.asLong）。クライアントスレッドで更新し、ワーカーから読む
+    @Volatile
+    private var cameraSection = 0L
+    private var installed = false
+
+    /**
+     * Translucent モードを使えるかを返します。Indigo が読み込まれているのにフックが注入されていなければ、一度だけ警告して false を返します。
+     * クライアントスレッドから呼び出してください。
+     */
+    fun isSupported(): Boolean = supported ?: detectSupport().also { supported = it }
+
+    private fun detectSupport(): Boolean {
+        if (!FabricLoader.getInstance().isModLoaded(INDIGO_MOD_ID)) return true
+        try {
+            // 初期化はせずに読み込むだけで、mixin が適用される
+            Class.forName(INDIGO_TERRAIN_CONTEXT, false, XRayTranslucency::class.java.classLoader)
+        } catch (_: ClassNotFoundException) {
+            // 対象のクラスがない
+        }
+        if (InfiniteMixinPlugin.isIndigoTerrainHooked()) return true
+        InfiniteClient.warn("Indigo の描画処理へのフックを適用できなかったため、XRay の Translucent モードは Normal モードで描画します。")
+        return false
+    }
+
+    fun install() {
+        if (installed) return
+        installed = true
+        ClientTickEvents.END_CLIENT_TICK.register { client -> onTick(client) }
+    }
+
+    private fun onTick(client: MinecraftClient) {
+        val entity = client.cameraEntity ?: return
+        val section = ChunkSectionPos.asLong(entity.blockX shr 4, entity.blockY shr 4, entity.blockZ shr 4)
+        val previous = cameraSection
+        if (section == previous) return
+        cameraSection = section
+        val snapshot = XRAY.get()?.snapshot() ?: return
+        if (!FeatureFlags.xray || snapshot.mode != XRayMode.Translucent) return
+        requestBoundaryRebuilds(previous, section, snapshot.translucentRadius)
+    }
+
+    // カメラの移動で半透明にするかどうかが変わったセクションだけを作り直す
+    private fun requestBoundaryRebuilds(
+        previous: Long,
+        current: Long,
+        radius: Int,
+    ) {
+        val reach = (radius shr 4) + 1
+        val minX = minOf(ChunkSectionPos.unpackX(previous), ChunkSectionPos.unpackX(current)) - reach
+        val maxX = maxOf(ChunkSectionPos.unpackX(previous), ChunkSectionPos.unpackX(current)) + reach
+        val minY = minOf(ChunkSectionPos.unpackY(previous), ChunkSectionPos.unpackY(current)) - reach
+        val maxY = maxOf(ChunkSectionPos.unpackY(previous), ChunkSectionPos.unpackY(current)) + reach
+        val minZ = minOf(ChunkSectionPos.unpackZ(previous), ChunkSectionPos.unpackZ(current)) - reach
+        val maxZ = maxOf(ChunkSectionPos.unpackZ(previous), ChunkSectionPos.unpackZ(current)) + reach
+        for (x in minX..maxX) {
+            for (y in minY..maxY) {
+                for (z in minZ..maxZ) {
+                    if (isNear(previous, x, y, z, radius) != isNear(current, x, y, z, radius)) {
+                        SectionRebuildScheduler.requestSectionAt(x shl 4, y shl 4, z shl 4)
+                    }
+                }
+            }
+        }
+    }
+
+    private fun isNear(
+        camera: Long,
+        x: Int,
+        y: Int,
+        z: Int,
+        radius: Int,
+    ): Boolean {
+        val dx = (x - ChunkSectionPos.unpackX(camera)).toLong() shl 4
+        val dy = (y - ChunkSectionPos.unpackY(camera)).toLong() shl 4
+        val dz = (z - ChunkSectionPos.unpackZ(camera)).toLong() shl 4
+        return dx * dx + dy * dy + dz * dz <= radius.toLong() * radius
+    }
+
+    /**
+     * セクションの構築の開始時にチャンクビルダーのスレッドから呼ばれます。
+     */
+    fun beginSection(sectionPos: ChunkSectionPos) {
+        val context = contexts.get()
+        val snapshot = if (FeatureFlags.xray) XRAY.get()?.snapshot() else null
+        context.currentGhost = false
+        if (snapshot == null || snapshot.mode != XRayMode.Translucent) {
+            context.active = false
+            return
+        }
+        context.active = true
+        context.table = snapshot.table
+        context.alpha = snapshot.opacity
+        context.near = isNear(cameraSection, sectionPos.sectionX, sectionPos.sectionY, sectionPos.sectionZ, snapshot.translucentRadius)
+    }
+
+    fun endSection() {
+        val context = contexts.get()
+        context.active = false
+        context.currentGhost = false
+    }
+
+    /**
+     * 構築中のセクションで対象外のブロックを半透明で描画するかどうかを返します。
+     */
+    fun isGhostSection(): Boolean {
+        val context = contexts.get()
+        return context.active && context.near
+    }
+
+    /**
+     * RenderLayers.getBlockLayer の代わりに使うレイヤーを返します。null の場合は元のレイヤーを使います。
+     */
+    fun blockLayerFor(state: BlockState): BlockRenderLayer? {
+        val context = contexts.get()
+        if (!context.active) return null
+        val ghost = context.near && !context.table.isTarget(state)
+        context.currentGhost = ghost
+        return if (ghost) BlockRenderLayer.TRANSLUCENT else null
+    }
+
+    /**
+     * 半透明で描画するブロックであれば、頂点の不透明度を書き換えるラッパーを返します。
+     * ラッパーはスレッドごとに使い回すため、返された値は次のブロックの描画までに使い切ってください。
+     */
+    fun wrap(
+        state: BlockState,
+        consumer: VertexConsumer,
+    ): VertexConsumer {
+        val context = contexts.get()
+        if (!context.active || !context.near || context.table.isTarget(state)) return consumer
+        return context.consumer.reset(consumer, context.alpha)
+    }
+
+    /**
+     * 直前に半透明に振り分けたブロックであれば、頂点の不透明度を書き換えるラッパーを返します。Indigo の描画経路で使います。
+     */
+    fun wrapCurrent(consumer: VertexConsumer): VertexConsumer {
+        val context = contexts.get()
+        if (!context.active || !context.currentGhost) return consumer
+        return context.consumer.reset(consumer, context.alpha)
+    }
+
+    /**
+     * 頂点の色の不透明度だけを置き換えて転送する VertexConsumer。
+     */
+    class AlphaVertexConsumer : VertexConsumer {
+        private var delegate: VertexConsumer? = null
+        private var alpha = 255
+
+        internal fun reset(
+            delegate: VertexConsumer,
+            alpha: Int,
+        ): VertexConsumer {
+            this.delegate = delegate
+            this.alpha = alpha
+            return this
+        }
+
+        private fun target(): VertexConsumer = delegate ?: throw IllegalStateException("出力先が設定されていません。")
+
+        override fun vertex(
+            x: Float,
+            y: Float,
+            z: Float,
+        ): VertexConsumer {
+            target().vertex(x, y, z)
+            return this
+        }
+
+        override fun color(
+            red: Int,
+            green: Int,
+            blue: Int,
+            alpha: Int,
+        ): VertexConsumer {
+            target().color(red, green, blue, alpha * this.alpha / 255)
+            return this
+        }
+
+        override fun texture(
+            u: Float,
+            v: Float,
+        ): VertexConsumer {
+            target().texture(u, v)
+            return this
+        }
+
+        override fun overlay(
+            u: Int,
+            v: Int,
+        ): VertexConsumer {
+            target().overlay(u, v)
+            return this
+        }
+
+        override fun light(
+            u: Int,
+            v: Int,
+        ): VertexConsumer {
+            target().light(u, v)
+            return this
+        }
+
+        override fun normal(
+            x: Float,
+            y: Float,
+            z: Float,
+        ): VertexConsumer {
+            target().normal(x, y, z)
+            return this
+        }
+
+        // BufferBuilder の一括書き込みを使えるように、まとめて転送する
+        override fun vertex(
+            x: Float,
+            y: Float,
+            z: Float,
+            color: Int,
+            u: Float,
+            v: Float,
+            overlay: Int,
+            light: Int,
+            normalX: Float,
+            normalY: Float,
+            normalZ: Float,
+        ) {
+            val sourceAlpha = color ushr 24
+            val scaled = (color and 0x00FFFFFF) or ((sourceAlpha * alpha / 255) shl 24)
+            target().vertex(x, y, z, scaled, u, v, overlay, light, normalX, normalY, normalZ)
+        }
+    }
+}
@@ -41,6 +41,7 @@ class FeatureSettingsScreen(
         val padding = 5 // Padding between widgets
 
         (feature.instance as? ConfigurableFeature)?.settings?.forEach { setting ->
+            if (setting.hidden) return@forEach
             when (setting) {
                 is InfiniteSetting.BooleanSetting -> {
                     settingWidgets.add(InfiniteSettingToggle(20, currentY, widgetWidth, defaultWidgetHeight, setting))
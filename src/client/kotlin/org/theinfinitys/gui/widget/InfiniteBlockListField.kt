@@ -126,6 +126,7 @@ class InfiniteBlockListField(
             val idToAdd = currentInput.trim()
             if (idToAdd.isNotBlank() && !setting.value.contains(idToAdd)) {
                 setting.value.add(idToAdd)
+                setting.notifyChanged()
                 updateScrollableContainer()
                 textField.text = ""
                 currentInput = ""
@@ -157,6 +158,7 @@ class InfiniteBlockListField(
 
     private fun removeIdFromList(idToRemove: String) {
         if (setting.value.remove(idToRemove)) {
+            setting.notifyChanged()
             updateScrollableContainer()
         }
     }
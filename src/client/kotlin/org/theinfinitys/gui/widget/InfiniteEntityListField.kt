@@ -121,6 +121,7 @@ class InfiniteEntityListField(
             val idToAdd = currentInput.trim()
             if (idToAdd.isNotBlank() && !setting.value.contains(idToAdd)) {
                 setting.value.add(idToAdd)
+                setting.notifyChanged()
                 updateScrollableContainer()
                 textField.text = ""
                 currentInput = ""
@@ -152,6 +153,7 @@ class InfiniteEntityListField(
 
     private fun removeIdFromList(idToRemove: String) {
         if (setting.value.remove(idToRemove)) {
+            setting.notifyChanged()
             updateScrollableContainer()
         }
     }
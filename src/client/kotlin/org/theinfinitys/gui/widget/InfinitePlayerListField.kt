@@ -121,6 +121,7 @@ class InfinitePlayerListField(
             val nameToAdd = currentInput.trim()
             if (nameToAdd.isNotBlank() && !setting.value.contains(nameToAdd)) {
                 setting.value.add(nameToAdd)
+                setting.notifyChanged()
                 updateScrollableContainer()
                 textField.text = ""
                 currentInput = ""
@@ -152,6 +153,7 @@ class InfinitePlayerListField(
 
     private fun removeNameFromList(nameToRemove: String) {
         if (setting.value.remove(nameToRemove)) {
+            setting.notifyChanged()
             updateScrollableContainer()
         }
     }
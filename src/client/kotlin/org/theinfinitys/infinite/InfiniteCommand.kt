@@ -1,6 +1,7 @@
 package org.theinfinitys.infinite
 
 import com.mojang.brigadier.CommandDispatcher
+import com.mojang.brigadier.arguments.IntegerArgumentType
 import com.mojang.brigadier.arguments.StringArgumentType
 import com.mojang.brigadier.context.CommandContext
 import com.mojang.brigadier.suggestion.SuggestionProvider
@@ -12,13 +13,19 @@ import net.minecraft.command.CommandSource
 import net.minecraft.util.Formatting
 import org.theinfinitys.ConfigManager
 import org.theinfinitys.ConfigurableFeature
+import org.theinfinitys.FeatureRegistry
 import org.theinfinitys.InfiniteClient.error
 import org.theinfinitys.InfiniteClient.info
 import org.theinfinitys.InfiniteClient.log
 import org.theinfinitys.InfiniteClient.searchFeature
 import org.theinfinitys.InfiniteClient.warn
+import org.theinfinitys.SectionRebuildScheduler
 import org.theinfinitys.featureCategories
+import org.theinfinitys.features.rendering.XRay
+import org.theinfinitys.profiler.InfiniteProfiler
 import org.theinfinitys.settings.InfiniteSetting
+import java.time.LocalDateTime
+import java.time.format.DateTimeFormatter
 
 object InfiniteCommand {
     fun registerCommands(
@@ -101,6 +108,43 @@ object InfiniteCommand {
                                 ),
                         ),
                     ),
+                )
+                // 4. /infinite profile [start/stop/reset/hud/dump/csv]
+                .then(
+                    ClientCommandManager
+                        .literal("profile")
+                        .executes { _ -> dumpProfile() }
+                        .then(
+                            ClientCommandManager.literal("start").executes { _ -> startProfile() },
+                        ).then(
+                            ClientCommandManager.literal("stop").executes { _ -> stopProfile() },
+                        ).then(
+                            ClientCommandManager.literal("reset").executes { _ -> resetProfile() },
+                        ).then(
+                            ClientCommandManager.literal("hud").executes { _ -> toggleProfileHud() },
+                        ).then(
+                            ClientCommandManager.literal("dump").executes { _ -> dumpProfile() },
+                        ).then(
+                            ClientCommandManager.literal("csv").executes { _ -> exportProfile() },
+                        ),
+                )
+                // 5. /infinite rebuild [floor <fps>]
+                .then(
+                    ClientCommandManager
+                        .literal("rebuild")
+                        .executes { _ -> rebuildStatus() }
+                        .then(
+                            ClientCommandManager.literal("floor").then(
+                                ClientCommandManager
+                                    .argument(
+                                        "fps",
+                                        IntegerArgumentType.integer(
+                                            SectionRebuildScheduler.MIN_FPS_LOWER,
+                                            SectionRebuildScheduler.MIN_FPS_UPPER,
+                                        ),
+                                    ).executes { context -> setRebuildFloor(context) },
+                            ),
+                        ),
                 ),
         )
         featureCategories.forEach { category ->
@@ -224,6 +268,89 @@ object InfiniteCommand {
         return 1
     }
 
+    private fun startProfile(): Int {
+        InfiniteProfiler.start()
+        info("プロファイラを開始しました。(${InfiniteProfiler.WINDOW_SECONDS}秒間のローリングウィンドウ)")
+        return 1
+    }
+
+    private fun stopProfile(): Int {
+        InfiniteProfiler.stop()
+        info("プロファイラを停止しました。")
+        return 1
+    }
+
+    private fun resetProfile(): Int {
+        InfiniteProfiler.reset()
+        info("プロファイラの計測結果をリセットしました。")
+        return 1
+    }
+
+    private fun toggleProfileHud(): Int {
+        InfiniteProfiler.hudVisible = !InfiniteProfiler.hudVisible
+        if (InfiniteProfiler.hudVisible && !InfiniteProfiler.enabled) {
+            InfiniteProfiler.start()
+        }
+        info("プロファイラのHUD表示を${if (InfiniteProfiler.hudVisible) "有効" else "無効"}にしました。")
+        return 1
+    }
+
+    private fun dumpProfile(): Int {
+        if (!InfiniteProfiler.enabled) {
+            warn("プロファイラは停止しています。'/infinite profile start' で開始してください。")
+            return 0
+        }
+        val rows = InfiniteProfiler.snapshot()
+        if (rows.isEmpty()) {
+            info("計測結果はまだありません。")
+            return 1
+        }
+        log("プロファイル結果 (平均/秒):")
+        rows.forEach { log(InfiniteProfiler.formatRow(it)) }
+        return 1
+    }
+
+    private fun exportProfile(): Int {
+        val timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"))
+        val file =
+            FabricLoader
+                .getInstance()
+                .gameDir
+                .resolve("infinite")
+                .resolve("profile")
+                .resolve("profile-$timestamp.csv")
+        return try {
+            InfiniteProfiler.exportCsv(file)
+            info("プロファイル結果を書き出しました: $file")
+            1
+        } catch (e: Exception) {
+            error("プロファイル結果の書き出しに失敗しました: ${e.message}")
+            0
+        }
+    }
+
+    private fun rebuildStatus(): Int {
+        log(
+            "セクションの再構築: 待機中 ${SectionRebuildScheduler.pendingCount} 件, " +
+                "1フレームあたり最大 ${SectionRebuildScheduler.sectionsPerFrame} 件, " +
+                "フレーム時間 ${"%.1f".format(SectionRebuildScheduler.lastFrameMillis)}ms, " +
+                "下限 ${SectionRebuildScheduler.minFps}fps",
+        )
+        return 1
+    }
+
+    private fun setRebuildFloor(context: CommandContext<FabricClientCommandSource>): Int {
+        // XRay の設定として保存し、再起動後も同じ下限を使う
+        val setting = FeatureRegistry.get(XRay::class.java)?.getSetting("RebuildMinFps") as? InfiniteSetting.IntSetting
+        if (setting == null) {
+            error("XRay の RebuildMinFps 設定が見つかりません。")
+            return 0
+        }
+        setting.value = IntegerArgumentType.getInteger(context, "fps")
+        info("セクションの再構築のフレームレートの下限を ${SectionRebuildScheduler.minFps}fps に設定しました。")
+        return 1
+    }
+
     private fun toggleFeatureState(context: CommandContext<*>): Int {
         val categoryName = StringArgumentType.getString(context, "category")
         val featureName = StringArgumentType.getString(context, "name")
@@ -297,7 +424,7 @@ object InfiniteCommand {
                 val feature = searchFeature(categoryName, featureName)
                 if (feature != null) {
                     CommandSource.suggestMatching(
-                        feature.settings.map { it.name },
+                        feature.settings.filterNot { it.hidden }.map { it.name },
                         builder,
                     )
                 }
@@ -360,7 +487,8 @@ object InfiniteCommand {
                     is Int -> rawValue.toIntOrNull() ?: throw IllegalArgumentException("Int型ではありません。")
                     is Float -> rawValue.toFloatOrNull() ?: throw IllegalArgumentException("Float型ではありません。")
                     is String -> rawValue
-                    is List<*> -> rawValue.split(",").map { it.trim() }.filter { it.isNotBlank() }
+                    // リスト設定はその場で編集されるため、変更可能なリストとして設定する
+                    is List<*> -> rawValue.split(",").map { it.trim() }.filter { it.isNotBlank() }.toMutableList()
                     else -> throw IllegalStateException("サポートされていない設定型です: ${setting.value::class.simpleName}")
                 }
 
@@ -407,6 +535,7 @@ object InfiniteCommand {
                     return 0
                 }
                 currentList.add(value)
+                listSetting.notifyChanged()
                 info("'$value' を '$settingKey' に追加しました。")
             } else {
                 if (!currentList.contains(value)) {
@@ -414,6 +543,7 @@ object InfiniteCommand {
                     return 0
                 }
                 currentList.remove(value)
+                listSetting.notifyChanged()
                 info("'$value' を '$settingKey' から削除しました。")
             }
             return 1
@@ -433,10 +563,11 @@ object InfiniteCommand {
         }
         val status = if (feature.isEnabled()) "${Formatting.GREEN}有効" else "${Formatting.RED}無効"
         info("フィーチャー $featureName の状態: $status")
-        val settingCount = feature.settings.size
+        val visibleSettings = feature.settings.filterNot { it.hidden }
+        val settingCount = visibleSettings.size
         if (settingCount > 0) {
             log("--- 設定一覧 ($settingCount 件) ---")
-            feature.settings.forEach { setting ->
+            visibleSettings.forEach { setting ->
                 val valueStr = setting.value.toString()
                 val typeStr = setting.value::class.simpleName
                 log(" - ${setting.name}: $valueStr ($typeStr)")
@@ -7,8 +7,10 @@ import net.minecraft.client.util.InputUtil
 import net.minecraft.text.Text
 import org.lwjgl.glfw.GLFW
 import org.theinfinitys.ConfigurableFeature
+import org.theinfinitys.FeatureTickScheduler
 import org.theinfinitys.featureCategories
 import org.theinfinitys.gui.screen.InfiniteScreen
+import org.theinfinitys.profiler.InfiniteProfiler
 
 data class ToggleKeyBindingHandler(
     val keyBinding: KeyBinding,
@@ -72,13 +74,8 @@ object InfiniteKeyBind {
             }
 
             // Tick all enabled features
-            for (category in featureCategories) {
-                for (feature in category.features) {
-                    if (feature.instance is ConfigurableFeature && feature.instance.isEnabled()) {
-                        feature.instance.tick()
-                    }
-                }
-            }
+            FeatureTickScheduler.tick()
+            InfiniteProfiler.onClientTick()
         }
     }
 }
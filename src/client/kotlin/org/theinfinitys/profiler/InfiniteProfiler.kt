@@ -0,0 +1,271 @@
+package org.theinfinitys.profiler
+
+import java.lang.management.ManagementFactory
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * フィーチャーの tick や Mixin のフックごとに処理時間・呼び出し回数・割り当てバイト数を計測する軽量プロファイラ。
+ *
+ * 計測区間は Section として一度だけ登録し、Mixin では static final フィールドに保持して使用します。
+ * 無効時の begin()/end() は volatile フィールドの読み取りのみで終了します。
+ * 値は1秒ごとのバケットに集計され、直近 WINDOW_SECONDS 秒のローリングウィンドウとして参照できます。
+ */
+object InfiniteProfiler {
+    const val WINDOW_SECONDS = 10
+    private const val TICKS_PER_BUCKET = 20
+    private const val MAX_DEPTH = 64
+    private const val HUD_ROWS = 10
+
+    @Volatile
+    var enabled = false
+        private set
+
+    @Volatile
+    var hudVisible = false
+
+    private val sections = CopyOnWriteArrayList<Section>()
+    private val sectionsByName = ConcurrentHashMap<String, Section>()
+
+    // ThreadMXBean による割り当てバイト数の取得。サポートされないJVMでは null
+    private val allocationBean: com.sun.management.ThreadMXBean? =
+        (ManagementFactory.getThreadMXBean() as? com.sun.management.ThreadMXBean)
+            ?.takeIf { it.isThreadAllocatedMemorySupported }
+
+    // 入れ子になった区間の割り当て開始値を保持するスレッドごとのスタック
+    private class Frame {
+        val allocStart = LongArray(MAX_DEPTH)
+        var depth = 0
+    }
+
+    private val frames = ThreadLocal.withInitial { Frame() }
+
+    private var bucketIndex = 0
+    private var bucketTicks = 0
+    private var filledBuckets = 0
+
+    // HUD 用の表示行。ウィンドウの更新時にのみ作り直す
+    @Volatile
+    var hudLines: List<String> = emptyList()
+        private set
+
+    class Section internal constructor(
+        val name: String,
+    ) {
+        private val nanos = LongAdder()
+        private val calls = LongAdder()
+        private val bytes = LongAdder()
+
+        internal val windowNanos = LongArray(WINDOW_SECONDS)
+        internal val windowCalls = LongArray(WINDOW_SECONDS)
+        internal val windowBytes = LongArray(WINDOW_SECONDS)
+
+        /**
+         * 計測を開始し、end() に渡すトークンを返します。プロファイラが無効な場合は 0 を返します。
+         */
+        fun begin(): Long {
+            if (!enabled) return 0L
+            val bean = allocationBean
+            if (bean != null) {
+                val frame = frames.get()
+                if (frame.depth < MAX_DEPTH) {
+                    frame.allocStart[frame.depth] = bean.currentThreadAllocatedBytes
+                }
+                frame.depth++
+            }
+            val now = System.nanoTime()
+            return if (now == 0L) 1L else now
+        }
+
+        /**
+         * begin() が返したトークンを受け取り、計測を終了します。
+         */
+        fun end(token: Long) {
+            if (token == 0L) return
+            val elapsed = System.nanoTime() - token
+            var allocated = 0L
+            val bean = allocationBean
+            if (bean != null) {
+                val frame = frames.get()
+                frame.depth--
+                if (frame.depth in 0 until MAX_DEPTH) {
+                    allocated = bean.currentThreadAllocatedBytes - frame.allocStart[frame.depth]
+                }
+            }
+            nanos.add(elapsed)
+            calls.increment()
+            if (allocated > 0) bytes.add(allocated)
+        }
+
+        internal fun flush(index: Int) {
+            windowNanos[index] = nanos.sumThenReset()
+            windowCalls[index] = calls.sumThenReset()
+            windowBytes[index] = bytes.sumThenReset()
+        }
+
+        internal fun clear() {
+            nanos.reset()
+            calls.reset()
+            bytes.reset()
+            windowNanos.fill(0L)
+            windowCalls.fill(0L)
+            windowBytes.fill(0L)
+        }
+    }
+
+    /**
+     * ウィンドウ内の集計結果。
+     */
+    data class Row(
+        val name: String,
+        val calls: Long,
+        val totalNanos: Long,
+        val allocatedBytes: Long,
+        val seconds: Int,
+    ) {
+        val averageNanos: Long get() = if (calls == 0L) 0L else totalNanos / calls
+        val nanosPerSecond: Long get() = totalNanos / seconds
+        val callsPerSecond: Long get() = calls / seconds
+        val bytesPerSecond: Long get() = allocatedBytes / seconds
+    }
+
+    /**
+     * 名前に対応する計測区間を取得します。同じ名前に対しては常に同じ Section を返します。
+     */
+    fun section(name: String): Section =
+        sectionsByName.computeIfAbsent(name) { key ->
+            Section(key).also { sections.add(it) }
+        }
+
+    fun start() {
+        reset()
+        allocationBean?.let { if (!it.isThreadAllocatedMemoryEnabled) it.isThreadAllocatedMemoryEnabled = true }
+        enabled = true
+    }
+
+    fun stop() {
+        enabled = false
+        hudLines = emptyList()
+    }
+
+    fun reset() {
+        sections.forEach { it.clear() }
+        bucketIndex = 0
+        bucketTicks = 0
+        filledBuckets = 0
+        hudLines = emptyList()
+    }
+
+    /**
+     * END_CLIENT_TICK から毎ティック呼び出され、1秒ごとにバケットを進めます。
+     */
+    fun onClientTick() {
+        if (!enabled) return
+        if (++bucketTicks < TICKS_PER_BUCKET) return
+        bucketTicks = 0
+        for (section in sections) {
+            section.flush(bucketIndex)
+        }
+        bucketIndex = (bucketIndex + 1) % WINDOW_SECONDS
+        if (filledBuckets < WINDOW_SECONDS) filledBuckets++
+        if (hudVisible) {
+            hudLines = buildHudLines()
+        }
+    }
+
+    /**
+     * 直近のウィンドウの集計結果を、秒あたりの処理時間の降順で返します。
+     */
+    fun snapshot(): List<Row> {
+        val seconds = filledBuckets.coerceAtLeast(1)
+        return sections
+            .map { section ->
+                Row(
+                    section.name,
+                    section.windowCalls.sum(),
+                    section.windowNanos.sum(),
+                    section.windowBytes.sum(),
+                    seconds,
+                )
+            }.filter { it.calls > 0 }
+            .sortedByDescending { it.totalNanos }
+    }
+
+    /**
+     * 集計結果をCSVとして書き出します。
+     */
+    fun exportCsv(file: Path): Path {
+        Files.createDirectories(file.parent)
+        val builder = StringBuilder()
+        builder.append("section,calls,total_ns,avg_ns,alloc_bytes,calls_per_sec,ns_per_sec,alloc_bytes_per_sec\n")
+        for (row in snapshot()) {
+            builder
+                .append('"')
+                .append(row.name.replace("\"", "\"\""))
+                .append('"')
+                .append(',')
+                .append(row.calls)
+                .append(',')
+                .append(row.totalNanos)
+                .append(',')
+                .append(row.averageNanos)
+                .append(',')
+                .append(row.allocatedBytes)
+                .append(',')
+                .append(row.callsPerSecond)
+                .append(',')
+                .append(row.nanosPerSecond)
+                .append(',')
+                .append(row.bytesPerSecond)
+                .append('\n')
+        }
+        Files.writeString(file, builder)
+        return file
+    }
+
+    fun formatRow(row: Row): String =
+        String.format(
+            "%-32s %8d/s %9.1fµs %8.3fms/s %10s/s",
+            row.name,
+            row.callsPerSecond,
+            row.averageNanos / 1_000.0,
+            row.nanosPerSecond / 1_000_000.0,
+            formatBytes(row.bytesPerSecond),
+        )
+
+    private fun buildHudLines(): List<String> {
+        val rows = snapshot().take(HUD_ROWS)
+        return listOf("Infinite Profiler (${filledBuckets}s)") +
+            rows.map { row ->
+                String.format(
+                    "%s %.2fms/s %d/s %s/s",
+                    row.name,
+                    row.nanosPerSecond / 1_000_000.0,
+                    row.callsPerSecond,
+                    formatBytes(row.bytesPerSecond),
+                )
+            }
+    }
+
+    private fun formatBytes(bytes: Long): String =
+        when {
+            bytes >= 1L shl 20 -> String.format("%.1fMB", bytes / (1024.0 * 1024.0))
+            bytes >= 1L shl 10 -> String.format("%.1fKB", bytes / 1024.0)
+            else -> "${bytes}B"
+        }
+}
+
+/**
+ * ブロックの処理時間を計測します。Kotlin側の計測ポイントで使用します。
+ */
+inline fun <T> InfiniteProfiler.Section.measure(block: () -> T): T {
+    val token = begin()
+    try {
+        return block()
+    } finally {
+        end(token)
+    }
+}
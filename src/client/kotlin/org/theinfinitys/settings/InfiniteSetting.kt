@@ -3,18 +3,114 @@ package org.theinfinitys.settings
 sealed class InfiniteSetting<T>(
     val name: String,
     val description: String,
-    var value: T,
+    value: T,
     private val defaultValue: T,
 ) {
+    var value: T = value
+        set(newValue) {
+            field = newValue
+            onValueChanged(newValue)
+            notifyListeners(newValue)
+        }
+
+    // 変更リスナー。Property と同様に、追加時に配列ごと差し替える
+    @Volatile
+    private var changeListeners: Array<Any> = emptyArray()
+
+    /**
+     * 設定画面や設定のコマンドに表示しない、フィーチャーが内部で使う設定かどうか。保存と読み込みは通常どおり行われます。
+     */
+    open val hidden: Boolean get() = false
+
     fun reset() {
         value = defaultValue
     }
 
+    // 値が変更されたときに呼ばれる。プリミティブのミラーを持つサブクラスが更新に使用する
+    protected open fun onValueChanged(newValue: T) {}
+
+    /**
+     * 値が変更されたときに呼ばれるリスナーを登録します。
+     */
+    fun addChangeListener(listener: (newValue: T) -> Unit) {
+        synchronized(this) {
+            changeListeners += listener
+        }
+    }
+
+    /**
+     * リストなど、値をその場で変更した後に呼び出してリスナーへ通知します。
+     */
+    fun notifyChanged() {
+        notifyListeners(value)
+    }
+
+    private fun notifyListeners(newValue: T) {
+        for (listener in changeListeners) {
+            @Suppress("UNCHECKED_CAST")
+            (listener as (T) -> Unit)(newValue)
+        }
+    }
+
+    /**
+     * BooleanSetting の値を読むためのハンドル。フィーチャーごとに一度だけ解決して保持します。
+     */
+    class BooleanHandle internal constructor(
+        private val setting: BooleanSetting,
+    ) {
+        val name: String get() = setting.name
+
+        fun get(): Boolean = setting.booleanValue
+    }
+
+    /**
+     * IntSetting の値をボックス化せずに読むためのハンドル。
+     */
+    class IntHandle internal constructor(
+        private val setting: IntSetting,
+    ) {
+        val name: String get() = setting.name
+
+        fun get(): Int = setting.intValue
+    }
+
+    /**
+     * FloatSetting の値をボックス化せずに読むためのハンドル。
+     */
+    class FloatHandle internal constructor(
+        private val setting: FloatSetting,
+    ) {
+        val name: String get() = setting.name
+
+        fun get(): Float = setting.floatValue
+    }
+
+    /**
+     * EnumSetting の値をキャストせずに読むためのハンドル。
+     */
+    class EnumHandle<E : Enum<E>> internal constructor(
+        private val setting: EnumSetting<E>,
+    ) {
+        val name: String get() = setting.name
+
+        fun get(): E = setting.value
+    }
+
     class BooleanSetting(
         name: String,
         description: String,
         defaultValue: Boolean,
-    ) : InfiniteSetting<Boolean>(name, description, defaultValue, defaultValue)
+    ) : InfiniteSetting<Boolean>(name, description, defaultValue, defaultValue) {
+        @Volatile
+        var booleanValue: Boolean = defaultValue
+            private set
+
+        override fun onValueChanged(newValue: Boolean) {
+            booleanValue = newValue
+        }
+
+        fun handle(): BooleanHandle = BooleanHandle(this)
+    }
 
     class IntSetting(
         name: String,
@@ -22,7 +118,18 @@ sealed class InfiniteSetting<T>(
         defaultValue: Int,
         val min: Int,
         val max: Int,
-    ) : InfiniteSetting<Int>(name, description, defaultValue, defaultValue)
+    ) : InfiniteSetting<Int>(name, description, defaultValue, defaultValue) {
+        // value はジェネリックなため読み取りのたびにボックス化される。ホットパスではこちらを読む
+        @Volatile
+        var intValue: Int = defaultValue
+            private set
+
+        override fun onValueChanged(newValue: Int) {
+            intValue = newValue
+        }
+
+        fun handle(): IntHandle = IntHandle(this)
+    }
 
     class FloatSetting(
         name: String,
@@ -30,7 +137,18 @@ sealed class InfiniteSetting<T>(
         defaultValue: Float,
         val min: Float,
         val max: Float,
-    ) : InfiniteSetting<Float>(name, description, defaultValue, defaultValue)
+    ) : InfiniteSetting<Float>(name, description, defaultValue, defaultValue) {
+        // value はジェネリックなため読み取りのたびにボックス化される。ホットパスではこちらを読む
+        @Volatile
+        var floatValue: Float = defaultValue
+            private set
+
+        override fun onValueChanged(newValue: Float) {
+            floatValue = newValue
+        }
+
+        fun handle(): FloatHandle = FloatHandle(this)
+    }
 
     class StringSetting(
         name: String,
@@ -42,6 +160,7 @@ sealed class InfiniteSetting<T>(
         name: String,
         description: String,
         defaultValue: List<String>,
+        override val hidden: Boolean = false,
     ) : InfiniteSetting<List<String>>(name, description, defaultValue, defaultValue)
 
     class EnumSetting<E : Enum<E>>(
@@ -49,7 +168,9 @@ sealed class InfiniteSetting<T>(
         description: String,
         defaultValue: E,
         val options: List<E>,
-    ) : InfiniteSetting<E>(name, description, defaultValue, defaultValue)
+    ) : InfiniteSetting<E>(name, description, defaultValue, defaultValue) {
+        fun handle(): EnumHandle<E> = EnumHandle(this)
+    }
 
     class BlockIDSetting(
         name: String,
@@ -3,40 +3,68 @@ package org.theinfinitys.settings
 class Property<T>(
     initialValue: T,
 ) {
-    // リスナーリストの同期に使用するロックオブジェクト (Propertyインスタンス自体をロックすることも可能だが、ここでは明示的なロックを使用)
+    // 追加・削除の同期に使用するロックオブジェクト。通知時はロックを取らない
     private val listenerLock = Any()
 
-    // リスナーリスト自体はプライベートなままで、操作時にロックを使用
-    private val listeners = mutableListOf<(oldValue: T, newValue: T) -> Unit>()
+    // リスナー配列はコピーオンライトで、追加・削除のたびに新しい配列へ差し替える。
+    // 通知側は volatile の読み取りだけで配列を取得できるので、値の変更ごとのコピーは発生しない
+    @Volatile
+    private var listeners: Array<Any> = EMPTY
 
-    var value: T = initialValue
+    @Volatile
+    private var current: T = initialValue
+
+    // リスナーに最後に通知した値
+    private var notifiedValue: T = initialValue
+
+    // 通知中に同じプロパティへ値が設定された場合、その場で再帰的に通知せず、現在の通知が終わった後にまとめて通知する
+    private var notifying = false
+
+    var value: T
+        get() = current
         set(newValue) {
-            if (field != newValue) {
-                val oldValue = field
-                field = newValue
-
-                // 【重要修正 1】リスナーを実行する前に、ロックを使って安全にリストのコピーを作成する
-                val listenersToNotify =
-                    synchronized(listenerLock) {
-                        listeners.toList() // コピーを作成
+            if (current == newValue) return
+            current = newValue
+            if (notifying) return
+            notifying = true
+            try {
+                // set→リスナー→set の連鎖は最新の値への一回の通知にまとめる。最終的に値が戻っていれば通知しない
+                while (true) {
+                    val oldValue = notifiedValue
+                    val latest = current
+                    if (oldValue == latest) break
+                    notifiedValue = latest
+                    for (listener in listeners) {
+                        @Suppress("UNCHECKED_CAST")
+                        (listener as (T, T) -> Unit)(oldValue, latest)
                     }
-
-                // コピーに対して反復処理を実行。これにより ConcurrentModificationException を回避
-                listenersToNotify.forEach { it(oldValue, newValue) }
+                }
+            } finally {
+                notifying = false
             }
         }
 
     fun addListener(listener: (oldValue: T, newValue: T) -> Unit) {
-        // 【重要修正 2】リストの変更操作を同期
         synchronized(listenerLock) {
-            listeners.add(listener)
+            listeners += listener
         }
     }
 
     fun removeListener(listener: (oldValue: T, newValue: T) -> Unit) {
-        // 【重要修正 3】リストの変更操作を同期
         synchronized(listenerLock) {
-            listeners.remove(listener)
+            val currentListeners = listeners
+            val index = currentListeners.indexOf(listener)
+            if (index < 0) return
+            listeners =
+                if (currentListeners.size == 1) {
+                    EMPTY
+                } else {
+                    Array(currentListeners.size - 1) { i -> if (i < index) currentListeners[i] else currentListeners[i + 1] }
+                }
         }
     }
+
+    private companion object {
+        val EMPTY = emptyArray<Any>()
+    }
 }